@@ -0,0 +1,40 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 控件共用的后台线程池（后台优先级），用于解码图片、排版文字、加载字体等短小的任务
+ */
+final class BackgroundExecutor {
+
+    private static final int THREAD_COUNT =
+            Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final ExecutorService sExecutor =
+            Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "BackgroundExecutor #" + mCount.incrementAndGet());
+                }
+            });
+
+    private BackgroundExecutor() {
+    }
+
+    static ExecutorService get() {
+        return sExecutor;
+    }
+}
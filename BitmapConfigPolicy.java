@@ -0,0 +1,123 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 解码时Bitmap.Config的选择策略：不透明的图片可以解码成RGB_565或硬件Bitmap以节省内存。
+ * <p>
+ * 通过{@link #getBytesSaved()}可以查看相对ARGB_8888节省的内存。
+ */
+public final class BitmapConfigPolicy {
+
+    /** Always decode to ARGB_8888. */
+    public static final int POLICY_ARGB_8888 = 0;
+
+    /** Decode opaque images to RGB_565. */
+    public static final int POLICY_OPAQUE_RGB_565 = 1;
+
+    /**
+     * Decode opaque images to hardware bitmaps where they can be drawn through a shader,
+     * otherwise to RGB_565.
+     */
+    public static final int POLICY_OPAQUE_HARDWARE = 2;
+
+    private static volatile int sDefaultPolicy = POLICY_ARGB_8888;
+
+    private static final AtomicLong sBytesSaved = new AtomicLong();
+    private static final AtomicInteger sReducedCount = new AtomicInteger();
+
+    private BitmapConfigPolicy() {
+    }
+
+    /**
+     * Sets the policy used by views which don't set their own.
+     *
+     * @param policy one of {@link #POLICY_ARGB_8888}, {@link #POLICY_OPAQUE_RGB_565} or
+     *               {@link #POLICY_OPAQUE_HARDWARE}
+     */
+    public static void setDefaultPolicy(int policy) {
+        sDefaultPolicy = policy;
+    }
+
+    public static int getDefaultPolicy() {
+        return sDefaultPolicy;
+    }
+
+    /**
+     * Returns the config to decode an image to.
+     *
+     * @param policy        the policy to apply
+     * @param bounds        the options filled in by a bounds-only decode of the image
+     * @param allowHardware whether the result may be drawn only on hardware canvases
+     */
+    static Bitmap.Config resolve(int policy, BitmapFactory.Options bounds,
+                                 boolean allowHardware) {
+        if (policy == POLICY_ARGB_8888 || !isOpaque(bounds)) {
+            return Bitmap.Config.ARGB_8888;
+        }
+
+        if (policy == POLICY_OPAQUE_HARDWARE && allowHardware
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return Bitmap.Config.HARDWARE;
+        }
+        return Bitmap.Config.RGB_565;
+    }
+
+    private static boolean isOpaque(BitmapFactory.Options bounds) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && bounds.outConfig == Bitmap.Config.RGB_565) {
+            return true;
+        }
+        // JPEG has no alpha channel.
+        return "image/jpeg".equals(bounds.outMimeType);
+    }
+
+    static boolean isHardware(Bitmap bitmap) {
+        return isHardwareConfig(bitmap.getConfig());
+    }
+
+    static boolean isHardwareConfig(Bitmap.Config config) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && config == Bitmap.Config.HARDWARE;
+    }
+
+    /**
+     * Records how much heap the decoded bitmap saves compared to ARGB_8888.
+     */
+    static void recordDecoded(Bitmap bitmap) {
+        if (bitmap == null || bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+            return;
+        }
+
+        final long argbBytes = (long) bitmap.getWidth() * bitmap.getHeight() * 4;
+        final long heapBytes = isHardware(bitmap) ? 0 : bitmap.getByteCount();
+        if (argbBytes > heapBytes) {
+            sBytesSaved.addAndGet(argbBytes - heapBytes);
+            sReducedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the total heap bytes saved by decoding to a config other than ARGB_8888.
+     */
+    public static long getBytesSaved() {
+        return sBytesSaved.get();
+    }
+
+    /**
+     * Returns the number of bitmaps decoded to a config smaller than ARGB_8888.
+     */
+    public static int getReducedCount() {
+        return sReducedCount.get();
+    }
+
+    public static void resetStats() {
+        sBytesSaved.set(0);
+        sReducedCount.set(0);
+    }
+}
@@ -0,0 +1,290 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Future;
+
+/**
+ * 在后台线程按目标尺寸解码图片，结果回调到主线程
+ */
+final class BitmapLoader {
+
+    private static final String TAG = BitmapLoader.class.getSimpleName();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Callback invoked on the main thread when a decode finishes.
+     */
+    interface Callback {
+        /**
+         * @param bitmap the decoded bitmap, or null if decoding failed
+         */
+        void onBitmapLoaded(Bitmap bitmap);
+    }
+
+    private BitmapLoader() {
+    }
+
+    /**
+     * Parameters of a decode.
+     */
+    static final class Request {
+        final Uri uri;
+        final int reqWidth;
+        final int reqHeight;
+
+        /** Whether to decode only the center-cropped region filling the requested size. */
+        boolean cropRegion;
+
+        /** One of the {@link BitmapConfigPolicy} policies. */
+        int configPolicy = BitmapConfigPolicy.POLICY_ARGB_8888;
+
+        /** Whether the result may be a hardware bitmap. */
+        boolean allowHardware;
+
+        Request(Uri uri, int reqWidth, int reqHeight) {
+            this.uri = uri;
+            this.reqWidth = reqWidth;
+            this.reqHeight = reqHeight;
+        }
+    }
+
+    /**
+     * Decodes the requested uri on a background thread, sampled down to the requested size.
+     *
+     * @return the future of the task, which can be used to cancel it
+     */
+    static Future<?> load(Context context, final Request request, final Callback callback) {
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        return BackgroundExecutor.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                try {
+                    bitmap = decode(resolver, request);
+                } catch (IOException e) {
+                    logFailure(request, e);
+                } catch (RuntimeException e) {
+                    // Such as a SecurityException from the provider; the callback still
+                    // runs, or the view would wait for the load forever.
+                    logFailure(request, e);
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    BitmapPool.put(bitmap);
+                    return;
+                }
+
+                BitmapConfigPolicy.recordDecoded(bitmap);
+                final Bitmap result = bitmap;
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBitmapLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void logFailure(Request request, Exception e) {
+        // Cancelled loads are interrupted while reading the stream, which is expected.
+        if (!Thread.currentThread().isInterrupted() && !(e instanceof InterruptedIOException)) {
+            Log.w(TAG, "Unable to decode " + request.uri, e);
+        }
+    }
+
+    static Bitmap decode(ContentResolver resolver, Request request) throws IOException {
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decodeStream(resolver, request.uri, bounds);
+
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        final Bitmap.Config config = BitmapConfigPolicy.resolve(request.configPolicy, bounds,
+                request.allowHardware);
+        if (request.cropRegion && request.reqWidth > 0 && request.reqHeight > 0) {
+            final Bitmap bitmap = decodeCroppedBitmap(resolver, request,
+                    bounds.outWidth, bounds.outHeight, config);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        return decodeSampledBitmap(resolver, request, bounds.outWidth, bounds.outHeight,
+                config);
+    }
+
+    private static Bitmap decodeSampledBitmap(ContentResolver resolver, Request request,
+                                              int width, int height, Bitmap.Config config)
+            throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(width, height,
+                request.reqWidth, request.reqHeight);
+        options.inPreferredConfig = config;
+        return decodeStreamReusing(resolver, request.uri, options,
+                divideRoundUp(width, options.inSampleSize),
+                divideRoundUp(height, options.inSampleSize));
+    }
+
+    /**
+     * Decodes only the part of the image which center crop shows in the requested size,
+     * sampled down to that size.
+     *
+     * @return the bitmap, or null if {@link BitmapRegionDecoder} doesn't support the format
+     */
+    private static Bitmap decodeCroppedBitmap(ContentResolver resolver, Request request,
+                                              int width, int height, Bitmap.Config config)
+            throws IOException {
+        InputStream in = resolver.openInputStream(request.uri);
+        if (in == null) {
+            throw new IOException("Unable to open " + request.uri);
+        }
+
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(in, false);
+        } catch (IOException e) {
+            decoder = null;
+        } finally {
+            in.close();
+        }
+        if (decoder == null) {
+            return null;
+        }
+
+        try {
+            final Rect region = new Rect();
+            getCenterCropRegion(width, height, request.reqWidth, request.reqHeight, region);
+
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = calculateInSampleSize(region.width(), region.height(),
+                    request.reqWidth, request.reqHeight);
+            // The region decoder can't produce hardware bitmaps.
+            options.inPreferredConfig = BitmapConfigPolicy.isHardwareConfig(config)
+                    ? Bitmap.Config.RGB_565 : config;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                options.inMutable = true;
+                options.inBitmap = BitmapPool.getForDecode(
+                        divideRoundUp(region.width(), options.inSampleSize),
+                        divideRoundUp(region.height(), options.inSampleSize),
+                        options.inPreferredConfig);
+            }
+
+            try {
+                return decoder.decodeRegion(region, options);
+            } catch (IllegalArgumentException e) {
+                if (options.inBitmap == null) {
+                    throw e;
+                }
+                BitmapPool.put(options.inBitmap);
+                options.inBitmap = null;
+                return decoder.decodeRegion(region, options);
+            }
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Computes the region of a {@code width} x {@code height} image which
+     * {@link android.widget.ImageView.ScaleType#CENTER_CROP} shows in a
+     * {@code reqWidth} x {@code reqHeight} rect.
+     */
+    static void getCenterCropRegion(int width, int height, int reqWidth, int reqHeight,
+                                    Rect outRegion) {
+        if ((long) width * reqHeight > (long) reqWidth * height) {
+            final int cropWidth = (int) ((long) height * reqWidth / reqHeight);
+            final int left = (width - cropWidth) / 2;
+            outRegion.set(left, 0, left + cropWidth, height);
+        } else {
+            final int cropHeight = (int) ((long) width * reqHeight / reqWidth);
+            final int top = (height - cropHeight) / 2;
+            outRegion.set(0, top, width, top + cropHeight);
+        }
+    }
+
+    /**
+     * Decodes into a bitmap taken from {@link BitmapPool} if there is a suitable one.
+     */
+    private static Bitmap decodeStreamReusing(ContentResolver resolver, Uri uri,
+                                              BitmapFactory.Options options, int width,
+                                              int height) throws IOException {
+        final Bitmap.Config config = options.inPreferredConfig != null
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        if (BitmapConfigPolicy.isHardwareConfig(config)) {
+            // Hardware bitmaps are immutable and can't be decoded into.
+            return decodeStream(resolver, uri, options);
+        }
+
+        options.inMutable = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || options.inSampleSize == 1) {
+            options.inBitmap = BitmapPool.getForDecode(width, height, config);
+        }
+
+        try {
+            final Bitmap bitmap = decodeStream(resolver, uri, options);
+            if (bitmap == null && options.inBitmap != null) {
+                BitmapPool.put(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap doesn't fit, decode into a new one.
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            BitmapPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return decodeStream(resolver, uri, options);
+        }
+    }
+
+    private static int divideRoundUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static Bitmap decodeStream(ContentResolver resolver, Uri uri,
+                                       BitmapFactory.Options options) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size which keeps both dimensions of the
+     * decoded image no smaller than the requested size, as needed by center crop.
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+
+        while (width / (inSampleSize * 2) >= reqWidth
+                && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
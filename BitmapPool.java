@@ -0,0 +1,219 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 进程内的Bitmap复用池，按Config和字节大小分桶，超出总内存上限时按LRU淘汰。
+ * <p>
+ * 只接收可变的Bitmap，取出的Bitmap可用作{@link android.graphics.BitmapFactory.Options#inBitmap}。
+ */
+public final class BitmapPool {
+
+    /** A pooled bitmap may be at most this many times as large as requested. */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static final Map<Bitmap.Config, TreeMap<Integer, ArrayList<Bitmap>>> sBuckets =
+            new HashMap<Bitmap.Config, TreeMap<Integer, ArrayList<Bitmap>>>();
+
+    /** Least recently put first. */
+    private static final LinkedList<Bitmap> sLruList = new LinkedList<Bitmap>();
+
+    private static int sMaxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16,
+            Integer.MAX_VALUE);
+    private static int sCurrentBytes;
+
+    private static int sHitCount;
+    private static int sMissCount;
+    private static int sPutCount;
+    private static int sEvictionCount;
+
+    private BitmapPool() {
+    }
+
+    /**
+     * Puts a bitmap which is no longer displayed anywhere back into the pool.
+     *
+     * @return true if the bitmap was pooled, false if it can't be reused
+     */
+    public static synchronized boolean put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() == null) {
+            return false;
+        }
+
+        final int size = getSize(bitmap);
+        if (size > sMaxBytes) {
+            return false;
+        }
+
+        if (sLruList.contains(bitmap)) {
+            return true;
+        }
+
+        BitmapShaderCache.remove(bitmap);
+
+        TreeMap<Integer, ArrayList<Bitmap>> bucket = sBuckets.get(bitmap.getConfig());
+        if (bucket == null) {
+            bucket = new TreeMap<Integer, ArrayList<Bitmap>>();
+            sBuckets.put(bitmap.getConfig(), bucket);
+        }
+        ArrayList<Bitmap> bitmaps = bucket.get(size);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<Bitmap>(2);
+            bucket.put(size, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        sLruList.addLast(bitmap);
+        sCurrentBytes += size;
+        sPutCount++;
+
+        trimToSize(sMaxBytes);
+        return true;
+    }
+
+    /**
+     * Returns a pooled bitmap which can be decoded into as {@code inBitmap} for an image of
+     * the given size and config, or null if there is none.
+     */
+    public static synchronized Bitmap getForDecode(int width, int height, Bitmap.Config config) {
+        final Bitmap bitmap = take(width, height, config);
+        if (bitmap == null) {
+            sMissCount++;
+        } else {
+            sHitCount++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns a pooled bitmap reconfigured to the given size and config and cleared to
+     * transparent, or null if there is none.
+     */
+    public static synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        final Bitmap bitmap = take(width, height, config);
+        if (bitmap == null) {
+            sMissCount++;
+            return null;
+        }
+
+        sHitCount++;
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap.reconfigure(width, height, config);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    private static Bitmap take(int width, int height, Bitmap.Config config) {
+        final TreeMap<Integer, ArrayList<Bitmap>> bucket = sBuckets.get(config);
+        if (bucket == null) {
+            return null;
+        }
+
+        final int size = width * height * getBytesPerPixel(config);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            // Only bitmaps of exactly the same size can be reused before KitKat.
+            final ArrayList<Bitmap> bitmaps = bucket.get(size);
+            if (bitmaps != null) {
+                for (int i = bitmaps.size() - 1; i >= 0; i--) {
+                    final Bitmap bitmap = bitmaps.get(i);
+                    if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                        remove(bucket, size, bitmaps, i);
+                        return bitmap;
+                    }
+                }
+            }
+            return null;
+        }
+
+        final Integer key = bucket.ceilingKey(size);
+        if (key == null || key > size * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+        final ArrayList<Bitmap> bitmaps = bucket.get(key);
+        final Bitmap bitmap = bitmaps.get(bitmaps.size() - 1);
+        remove(bucket, key, bitmaps, bitmaps.size() - 1);
+        return bitmap;
+    }
+
+    private static void remove(TreeMap<Integer, ArrayList<Bitmap>> bucket, int size,
+                               ArrayList<Bitmap> bitmaps, int index) {
+        final Bitmap bitmap = bitmaps.remove(index);
+        if (bitmaps.isEmpty()) {
+            bucket.remove(size);
+        }
+        sLruList.remove(bitmap);
+        sCurrentBytes -= size;
+    }
+
+    private static void trimToSize(int maxBytes) {
+        while (sCurrentBytes > maxBytes && !sLruList.isEmpty()) {
+            final Bitmap bitmap = sLruList.getFirst();
+            final int size = getSize(bitmap);
+            final TreeMap<Integer, ArrayList<Bitmap>> bucket = sBuckets.get(bitmap.getConfig());
+            final ArrayList<Bitmap> bitmaps = bucket.get(size);
+            remove(bucket, size, bitmaps, bitmaps.indexOf(bitmap));
+            bitmap.recycle();
+            sEvictionCount++;
+        }
+    }
+
+    private static int getSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * Sets the maximum total size in bytes of the pooled bitmaps, evicting as needed.
+     */
+    public static synchronized void setMaxSize(int maxBytes) {
+        sMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public static synchronized int getMaxSize() {
+        return sMaxBytes;
+    }
+
+    public static synchronized int getCurrentSize() {
+        return sCurrentBytes;
+    }
+
+    public static synchronized int getHitCount() {
+        return sHitCount;
+    }
+
+    public static synchronized int getMissCount() {
+        return sMissCount;
+    }
+
+    public static synchronized int getPutCount() {
+        return sPutCount;
+    }
+
+    public static synchronized int getEvictionCount() {
+        return sEvictionCount;
+    }
+
+    public static synchronized void clear() {
+        trimToSize(0);
+    }
+}
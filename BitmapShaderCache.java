@@ -0,0 +1,80 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Shader;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 进程内共享的BitmapShader缓存，以Bitmap实例为key，同一张图只创建一个Shader。
+ * <p>
+ * 缓存中的Shader不带local matrix，使用方需要自己通过Canvas变换完成缩放和平移。
+ * <p>
+ * Bitmap和Shader都是弱引用，缓存不会让任何Bitmap多存活一刻。
+ */
+public final class BitmapShaderCache {
+
+    /** The shaders by bitmap; the shader references its bitmap, so it is weak too. */
+    private static final WeakHashMap<Bitmap, WeakReference<BitmapShader>> sCache =
+            new WeakHashMap<Bitmap, WeakReference<BitmapShader>>();
+
+    private BitmapShaderCache() {
+    }
+
+    /**
+     * Returns the shared shader for the given bitmap, creating it if needed.
+     *
+     * @param bitmap the bitmap to wrap
+     * @return the shared shader, or null if the bitmap is null or recycled
+     */
+    public static synchronized BitmapShader obtain(Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+
+        if (bitmap.isRecycled()) {
+            sCache.remove(bitmap);
+            return null;
+        }
+
+        final WeakReference<BitmapShader> ref = sCache.get(bitmap);
+        BitmapShader shader = ref != null ? ref.get() : null;
+        if (shader == null) {
+            shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            sCache.put(bitmap, new WeakReference<BitmapShader>(shader));
+        }
+        return shader;
+    }
+
+    /**
+     * Drops the shader of the given bitmap, e.g. before the bitmap is recycled.
+     */
+    public static synchronized void remove(Bitmap bitmap) {
+        if (bitmap != null) {
+            sCache.remove(bitmap);
+        }
+    }
+
+    /**
+     * Drops the shaders whose bitmaps have been recycled or which are no longer used.
+     */
+    public static synchronized void trimRecycled() {
+        final Iterator<Map.Entry<Bitmap, WeakReference<BitmapShader>>> it =
+                sCache.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Bitmap, WeakReference<BitmapShader>> entry = it.next();
+            final Bitmap bitmap = entry.getKey();
+            if (bitmap == null || bitmap.isRecycled() || entry.getValue().get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    public static synchronized void clear() {
+        sCache.clear();
+    }
+}
@@ -0,0 +1,140 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * 批量改变checked状态：在{@link #begin()}和{@link #end()}之间，CheckableLinearLayout和
+ * CheckedImageView不会立即刷新drawable state，而是在下一帧统一刷新一次。
+ * <p>
+ * 只能在主线程使用，例如全选：
+ * <pre>
+ * CheckStateBatch.begin();
+ * for (...) row.setChecked(true);
+ * CheckStateBatch.end();
+ * </pre>
+ */
+public final class CheckStateBatch {
+
+    private static final Set<View> sPending =
+            Collections.newSetFromMap(new IdentityHashMap<View, Boolean>());
+
+    private static int sDepth;
+    private static boolean sScheduled;
+
+    private static int sCoalescedCount;
+    private static int sPassCount;
+
+    private static Handler sHandler;
+    private static Object sFrameCallback;
+
+    private static final Runnable sRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refreshPending();
+        }
+    };
+
+    private CheckStateBatch() {
+    }
+
+    /**
+     * Starts collecting drawable state refreshes. Batches may be nested.
+     */
+    public static void begin() {
+        sDepth++;
+    }
+
+    /**
+     * Ends the batch; the collected refreshes run together on the next frame.
+     */
+    public static void end() {
+        if (sDepth == 0) {
+            throw new IllegalStateException("end() called without begin()");
+        }
+        if (--sDepth == 0 && !sPending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Defers the drawable state refresh of the view to the end of the current batch.
+     *
+     * @return false if no batch is open and the view has to refresh right away
+     */
+    static boolean defer(View view) {
+        if (sDepth == 0) {
+            return false;
+        }
+        sPending.add(view);
+        sCoalescedCount++;
+        return true;
+    }
+
+    private static void schedule() {
+        if (sScheduled) return;
+
+        sScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            if (sHandler == null) {
+                sHandler = new Handler(Looper.getMainLooper());
+            }
+            sHandler.post(sRefreshRunnable);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void postFrameCallback() {
+        if (sFrameCallback == null) {
+            sFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    refreshPending();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback(
+                (Choreographer.FrameCallback) sFrameCallback);
+    }
+
+    private static void refreshPending() {
+        sScheduled = false;
+        // Refreshing may check more views, which then refresh right away.
+        final ArrayList<View> views = new ArrayList<View>(sPending);
+        sPending.clear();
+        for (int i = 0; i < views.size(); i++) {
+            views.get(i).refreshDrawableState();
+        }
+        sPassCount++;
+    }
+
+    /**
+     * Returns how many drawable state refreshes were deferred to a batched pass.
+     */
+    public static int getCoalescedCount() {
+        return sCoalescedCount;
+    }
+
+    /**
+     * Returns how many batched passes ran, one per frame at most.
+     */
+    public static int getPassCount() {
+        return sPassCount;
+    }
+
+    public static void resetStats() {
+        sCoalescedCount = 0;
+        sPassCount = 0;
+    }
+}
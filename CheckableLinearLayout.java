@@ -3,46 +3,171 @@ package cn.dream.android.appstore.ui.view;
 import android.content.Context;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Checkable;
 import android.widget.LinearLayout;
 
+import java.util.ArrayList;
+
 /**
  * 支持checked状态的LinearLayout，会同时改变其子空间的checked状态
+ * <p>
+ * 实现了Checkable的子控件在添加、移除时记录下来，改变状态时不需要遍历所有子控件。
+ * 开启{@link #setDeepPropagation(boolean)}后也会改变更深层的Checkable控件，
+ * 这时每次改变状态都重新遍历子控件。
+ * 在{@link CheckStateBatch}中改变状态时，drawable state在下一帧统一刷新。
  */
 public class CheckableLinearLayout extends LinearLayout implements Checkable {
 
     private static final int[] STATE_CHECKABLE = { android.R.attr.state_checked };
 
+    private static final DrawableStateCache sCheckedStates =
+            new DrawableStateCache(STATE_CHECKABLE);
+
     private boolean isChecked;
 
+    private SelectionModel mSelectionModel;
+    private long mSelectionKey;
+
+    /**
+     * The Checkable children, valid unless mCheckablesDirty. Deep propagation collects
+     * the descendants into it on every change instead.
+     */
+    private ArrayList<Checkable> mCheckables;
+    private boolean mCheckablesDirty;
+    private boolean mDeepPropagation;
+
+    private OnHierarchyChangeListener mOnHierarchyChangeListener;
+
     public CheckableLinearLayout(Context context) {
         super(context);
+        init();
     }
 
     public CheckableLinearLayout(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
     }
 
     public CheckableLinearLayout(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        mCheckables = new ArrayList<Checkable>();
+        super.setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+                if (!mDeepPropagation && child instanceof Checkable) {
+                    mCheckables.add((Checkable) child);
+                }
+                if (mOnHierarchyChangeListener != null) {
+                    mOnHierarchyChangeListener.onChildViewAdded(parent, child);
+                }
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+                if (!mDeepPropagation && child instanceof Checkable) {
+                    mCheckables.remove(child);
+                }
+                if (mOnHierarchyChangeListener != null) {
+                    mOnHierarchyChangeListener.onChildViewRemoved(parent, child);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        // The index listens to the hierarchy itself and calls the listener through.
+        mOnHierarchyChangeListener = listener;
+    }
+
+    /**
+     * Sets whether the checked state is also propagated to Checkable views nested deeper
+     * than the children. The children of a nested Checkable view are left to it.
+     * <p>
+     * Views can be added or removed deeper in the hierarchy without notifying this view,
+     * so the descendants are searched again on every change of the checked state.
+     */
+    public void setDeepPropagation(boolean deep) {
+        if (mDeepPropagation != deep) {
+            mDeepPropagation = deep;
+            mCheckablesDirty = true;
+        }
+    }
+
+    public boolean isDeepPropagation() {
+        return mDeepPropagation;
     }
 
     @Override
     public void setChecked(boolean checked) {
+        if (isChecked == checked) return;
+
         isChecked = checked;
 
-        refreshDrawableState();
+        if (mSelectionModel != null) {
+            mSelectionModel.setSelected(mSelectionKey, checked);
+        }
+
+        if (!CheckStateBatch.defer(this)) {
+            refreshDrawableState();
+        }
+
+        final ArrayList<Checkable> checkables = getCheckables();
+        for (int i = 0; i < checkables.size(); i++) {
+            checkables.get(i).setChecked(isChecked);
+        }
+    }
+
+    private ArrayList<Checkable> getCheckables() {
+        if (mCheckablesDirty || mDeepPropagation) {
+            mCheckables.clear();
+            collectCheckables(this, mCheckables);
+            // The children are indexed by the hierarchy listener from now on; deep
+            // propagation leaves the index to be rebuilt when it is turned off.
+            mCheckablesDirty = mDeepPropagation;
+        }
+        return mCheckables;
+    }
 
+    private void collectCheckables(ViewGroup group, ArrayList<Checkable> out) {
         View child;
 
-        for (int i = 0; i < getChildCount(); i++) {
-            child = getChildAt(i);
+        for (int i = 0; i < group.getChildCount(); i++) {
+            child = group.getChildAt(i);
             if (child instanceof Checkable) {
-                ((Checkable) child).setChecked(isChecked);
+                out.add((Checkable) child);
+            } else if (mDeepPropagation && child instanceof ViewGroup) {
+                collectCheckables((ViewGroup) child, out);
             }
         }
     }
 
+    /**
+     * Binds this view to the item of the given key in the model, or unbinds it if the
+     * model is null. The view then follows the selection of the item, and checking the
+     * view selects the item.
+     */
+    public void setSelectionModel(SelectionModel model, long key) {
+        if (mSelectionModel != null && mSelectionModel != model) {
+            mSelectionModel.unbind(this);
+        }
+        mSelectionModel = null;
+        mSelectionKey = key;
+        if (model != null) {
+            model.bind(this, key);
+        }
+        mSelectionModel = model;
+    }
+
+    public SelectionModel getSelectionModel() {
+        return mSelectionModel;
+    }
+
     @Override
     public boolean isChecked() {
         return isChecked;
@@ -55,6 +180,12 @@ public class CheckableLinearLayout extends LinearLayout implements Checkable {
 
     @Override
     protected int[] onCreateDrawableState(int extraSpace) {
+        if (extraSpace == 0) {
+            // The base state is shared by the views, so is the merged one.
+            final int[] baseState = super.onCreateDrawableState(0);
+            return isChecked ? sCheckedStates.merge(baseState) : baseState;
+        }
+
         int[] drawableState = super.onCreateDrawableState(extraSpace + 1);
         if (isChecked) {
             mergeDrawableStates(drawableState, STATE_CHECKABLE);
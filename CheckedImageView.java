@@ -7,13 +7,21 @@ import android.widget.ImageView;
 
 /**
  * 支持checked状态的ImageView
+ * <p>
+ * 在{@link CheckStateBatch}中改变状态时，drawable state在下一帧统一刷新。
  */
 public class CheckedImageView extends ImageView implements Checkable{
 
     private static final int[] STATE_CHECKABLE = { android.R.attr.state_checked };
 
+    private static final DrawableStateCache sCheckedStates =
+            new DrawableStateCache(STATE_CHECKABLE);
+
     private boolean isChecked;
 
+    private SelectionModel mSelectionModel;
+    private long mSelectionKey;
+
     public CheckedImageView(Context context) {
         super(context);
     }
@@ -29,7 +37,35 @@ public class CheckedImageView extends ImageView implements Checkable{
     @Override
     public void setChecked(boolean checked) {
         isChecked = checked;
-        refreshDrawableState();
+
+        if (mSelectionModel != null) {
+            mSelectionModel.setSelected(mSelectionKey, checked);
+        }
+
+        if (!CheckStateBatch.defer(this)) {
+            refreshDrawableState();
+        }
+    }
+
+    /**
+     * Binds this view to the item of the given key in the model, or unbinds it if the
+     * model is null. The view then follows the selection of the item, and checking the
+     * view selects the item.
+     */
+    public void setSelectionModel(SelectionModel model, long key) {
+        if (mSelectionModel != null && mSelectionModel != model) {
+            mSelectionModel.unbind(this);
+        }
+        mSelectionModel = null;
+        mSelectionKey = key;
+        if (model != null) {
+            model.bind(this, key);
+        }
+        mSelectionModel = model;
+    }
+
+    public SelectionModel getSelectionModel() {
+        return mSelectionModel;
     }
 
     @Override
@@ -44,6 +80,12 @@ public class CheckedImageView extends ImageView implements Checkable{
 
     @Override
     public int[] onCreateDrawableState(int extraSpace) {
+        if (extraSpace == 0) {
+            // The base state is shared by the views, so is the merged one.
+            final int[] baseState = super.onCreateDrawableState(0);
+            return isChecked ? sCheckedStates.merge(baseState) : baseState;
+        }
+
         int[] drawableState = super.onCreateDrawableState(extraSpace + 1);
         if (isChecked) {
             mergeDrawableStates(drawableState, STATE_CHECKABLE);
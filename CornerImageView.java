@@ -8,19 +8,38 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Matrix;
+import android.graphics.Outline;
 import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewOutlineProvider;
 import android.widget.ImageView;
 
+import java.util.concurrent.Future;
+
 import cn.dream.android.appstore.R;
-import cn.dream.android.appstore.util.ImageUtils;
+import cn.dream.android.appstore.util.ResourcesUtil;
 
 /**
  * 带圆角的ImageView
+ * <p>
+ * BitmapDrawable通过BitmapShader绘制圆角；其他Drawable不再转换成Bitmap，而是直接裁剪：
+ * 5.0及以上使用Outline裁剪，以下使用缓存的Path裁剪。5.0以下的动画Drawable每帧绘制到
+ * 同一个复用的帧缓冲Bitmap中，再通过BitmapShader绘制圆角。
+ * <p>
+ * 四个角可以分别设置半径，非统一圆角的Path在尺寸变化时才重新计算。
+ * <p>
+ * 支持前景（如点击遮罩），前景在同一次onDraw中绘制并裁剪成相同的圆角，不需要再嵌套
+ * ForegroundImageView。
  */
 public class CornerImageView extends ImageView {
 
@@ -30,10 +49,27 @@ public class CornerImageView extends ImageView {
     private static final int DEFAULT_BORDER_WIDTH = 0;
     private static final int DEFAULT_BORDER_COLOR = Color.BLACK;
 
+    /** The bitmap changed, the shader has to be obtained again. */
+    private static final int DIRTY_SHADER = 1;
+    /** The size or border width changed, the rects and the shader matrix are stale. */
+    private static final int DIRTY_MATRIX = 1 << 1;
+    /** The border color or width changed. */
+    private static final int DIRTY_BORDER = 1 << 2;
+    /** The color filter changed. */
+    private static final int DIRTY_PAINT = 1 << 3;
+
     private final RectF mDrawableRect = new RectF();
     private final RectF mBorderRect = new RectF();
+    private final RectF mBitmapRect = new RectF();
+
+    private final Path mClipPath = new Path();
+    private final Path mBitmapPath = new Path();
+    private final Path mBorderPath = new Path();
+    private final float[] mRadii = new float[8];
+    private final Rect mOutlineRect = new Rect();
 
     private final Matrix mShaderMatrix = new Matrix();
+    private float mShaderScale = 1f;
     private final Paint mBitmapPaint = new Paint();
     private final Paint mBorderPaint = new Paint();
 
@@ -43,14 +79,41 @@ public class CornerImageView extends ImageView {
     private int mBitmapHeight;
 
     private int mCorner;
+    private int mTopLeftCorner;
+    private int mTopRightCorner;
+    private int mBottomRightCorner;
+    private int mBottomLeftCorner;
     private int mBorderWidth;
     private int mBorderColor;
     private boolean mIsCircle;
 
     private ColorFilter mColorFilter;
 
-    private boolean mReady;
-    private boolean mSetupPending;
+    private Drawable mForeground;
+
+    /** Work left for {@link #setup()} before the next draw. */
+    private int mDirtyFlags;
+
+    private Uri mLoadUri;
+    private Future<?> mLoadTask;
+    private int mLoadGeneration;
+
+    /** The uri mBitmap was loaded from, if mBitmap was decoded by this view. */
+    private Uri mLoadedUri;
+
+    private boolean mRegionDecodeEnabled;
+
+    /** The config policy of this view, or -1 to use the default one. */
+    private int mConfigPolicy = -1;
+
+    /** Set once a hardware bitmap couldn't be drawn, to decode software bitmaps only. */
+    private boolean mSoftwareBitmapRequired;
+
+    /** Frame buffer of an animated drawable, drawn through mFrameShader. */
+    private Bitmap mFrameBitmap;
+    private BitmapShader mFrameShader;
+    private Canvas mFrameCanvas;
+    private boolean mFrameDirty;
 
     public CornerImageView(Context context) {
         super(context);
@@ -68,24 +131,42 @@ public class CornerImageView extends ImageView {
                 attrs, R.styleable.CornerImageView, defStyleAttr, 0);
 
         mCorner = a.getDimensionPixelSize(R.styleable.CornerImageView_corner, DEFAULT_CORNER);
+        mTopLeftCorner = a.getDimensionPixelSize(R.styleable.CornerImageView_topLeftCorner,
+                mCorner);
+        mTopRightCorner = a.getDimensionPixelSize(R.styleable.CornerImageView_topRightCorner,
+                mCorner);
+        mBottomRightCorner = a.getDimensionPixelSize(
+                R.styleable.CornerImageView_bottomRightCorner, mCorner);
+        mBottomLeftCorner = a.getDimensionPixelSize(
+                R.styleable.CornerImageView_bottomLeftCorner, mCorner);
+        if (isUniformCorner()) {
+            mCorner = mTopLeftCorner;
+        }
         mBorderWidth = a.getDimensionPixelSize(R.styleable.CornerImageView_border,
                 DEFAULT_BORDER_WIDTH);
         mBorderColor = a.getColor(R.styleable.CornerImageView_borderColor, DEFAULT_BORDER_COLOR);
         mIsCircle = a.getBoolean(R.styleable.CornerImageView_isCircle, false);
+        mRegionDecodeEnabled = a.getBoolean(R.styleable.CornerImageView_regionDecode, false);
+        Drawable foreground = a.getDrawable(R.styleable.CornerImageView_android_foreground);
 
         a.recycle();
 
+        if (foreground != null) {
+            setForeground(foreground);
+        }
+
         init();
     }
 
     private void init() {
         super.setScaleType(SCALE_TYPE);
 
-        mReady = true;
-        if (mSetupPending) {
-            setup();
-            mSetupPending = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            setOutlineProvider(new CornerOutlineProvider());
+            updateClipToOutline();
         }
+
+        markDirty(DIRTY_SHADER | DIRTY_MATRIX | DIRTY_BORDER | DIRTY_PAINT);
     }
 
     @Override
@@ -110,20 +191,277 @@ public class CornerImageView extends ImageView {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if (getDrawable() == null) {
+        // Without a drawable, e.g. while decoding, the foreground and border still show.
+        if (mBitmap != null && mLoadedUri != null && !canvas.isHardwareAccelerated()
+                && BitmapConfigPolicy.isHardware(mBitmap)) {
+            // Hardware bitmaps can't be drawn on software canvases, decode it again.
+            mSoftwareBitmapRequired = true;
+            setImageURIAsync(mLoadedUri);
             return;
         }
 
-        canvas.drawRoundRect(mDrawableRect, mCorner, mCorner, mBitmapPaint);
+        setup();
+
+        if (mBitmap == null && mFrameBitmap == null) {
+            if (getDrawable() != null) {
+                drawClippedDrawable(canvas);
+            }
+        } else if (mBitmapShader != null) {
+            if (mFrameDirty) {
+                renderFrame();
+            }
+
+            // The shader is shared with other views, so map the canvas into bitmap space
+            // instead of setting a local matrix on it.
+            final int saveCount = canvas.save();
+            canvas.concat(mShaderMatrix);
+            if (isUniformCorner()) {
+                final float corner = mCorner / mShaderScale;
+                canvas.drawRoundRect(mBitmapRect, corner, corner, mBitmapPaint);
+            } else if (isBitmapClippedByOutline()) {
+                canvas.drawRect(mBitmapRect, mBitmapPaint);
+            } else {
+                canvas.drawPath(mBitmapPath, mBitmapPaint);
+            }
+            canvas.restoreToCount(saveCount);
+        }
+        if (mForeground != null) {
+            drawForeground(canvas);
+        }
         if (mBorderWidth > 0) {
-            canvas.drawRoundRect(mBorderRect, mCorner, mCorner, mBorderPaint);
+            if (isUniformCorner()) {
+                canvas.drawRoundRect(mBorderRect, mCorner, mCorner, mBorderPaint);
+            } else {
+                canvas.drawPath(mBorderPath, mBorderPaint);
+            }
+        }
+    }
+
+    private void drawForeground(Canvas canvas) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && shouldClipToOutline()) {
+            // Clipped by the outline.
+            mForeground.draw(canvas);
+            return;
+        }
+
+        final int saveCount = canvas.save();
+        canvas.clipPath(mClipPath);
+        mForeground.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawClippedDrawable(Canvas canvas) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && isOutlineClipSupported()) {
+            // Clipped by the outline.
+            super.onDraw(canvas);
+            return;
+        }
+
+        final int saveCount = canvas.save();
+        canvas.clipPath(mClipPath);
+        super.onDraw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Draws the current frame of the animated drawable into the frame buffer, the same
+     * way ImageView would draw it into this view.
+     */
+    private void renderFrame() {
+        mFrameDirty = false;
+        mFrameBitmap.eraseColor(Color.TRANSPARENT);
+
+        final int saveCount = mFrameCanvas.save();
+        mFrameCanvas.translate(getPaddingLeft() - mBorderWidth, getPaddingTop() - mBorderWidth);
+        mFrameCanvas.concat(getImageMatrix());
+        getDrawable().draw(mFrameCanvas);
+        mFrameCanvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public void invalidateDrawable(Drawable dr) {
+        if (dr == getDrawable() && mFrameBitmap != null) {
+            mFrameDirty = true;
+        }
+        super.invalidateDrawable(dr);
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateAnimationVisibility(getWindowVisibility() == VISIBLE && isShown());
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateAnimationVisibility(visibility == VISIBLE && isShown());
+    }
+
+    /**
+     * Pauses animated drawables while this view is off screen. ImageView does this itself
+     * since Nougat.
+     */
+    private void updateAnimationVisibility(boolean visible) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return;
+        }
+
+        final Drawable drawable = getDrawable();
+        if (drawable instanceof Animatable && drawable.isVisible() != visible) {
+            drawable.setVisible(visible, false);
         }
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
-        setup();
+        if (mForeground != null) {
+            mForeground.setBounds(0, 0, w, h);
+        }
+        markDirty(DIRTY_MATRIX);
+        startLoadIfReady();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mBitmap == null) {
+            startLoadIfReady();
+        }
+        updateAnimationVisibility(getWindowVisibility() == VISIBLE && isShown());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // Keep mLoadUri so that the image is loaded again when re-attached.
+        if (mLoadTask != null) {
+            mLoadTask.cancel(true);
+            mLoadTask = null;
+            mLoadGeneration++;
+        }
+
+        if (mLoadedUri != null) {
+            // Give the decoded bitmap back to the pool, and decode it again when re-attached.
+            final Uri uri = mLoadedUri;
+            final Bitmap bitmap = mBitmap;
+            super.setImageDrawable(null);
+            mBitmap = null;
+            onBitmapChanged();
+            // setup() only runs before drawing, so drop the shader before the pool reuses
+            // the bitmap.
+            mBitmapShader = null;
+            mBitmapPaint.setShader(null);
+            releaseLoadedBitmap(bitmap);
+            mLoadUri = uri;
+        }
+
+        updateAnimationVisibility(false);
+        if (releaseFrameBuffer()) {
+            markDirty(DIRTY_SHADER);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    public Drawable getForeground() {
+        return mForeground;
+    }
+
+    public void setForegroundResource(int drawableResId) {
+        setForeground(ResourcesUtil.getDrawable(getContext(), drawableResId));
+    }
+
+    /**
+     * Sets a drawable drawn over the image, such as a press mask, clipped to the same
+     * corners. Only the overlay is redrawn when its state changes.
+     */
+    public void setForeground(Drawable drawable) {
+        if (mForeground == drawable) return;
+
+        if (mForeground != null) {
+            mForeground.setCallback(null);
+            unscheduleDrawable(mForeground);
+        }
+
+        final boolean hadForeground = mForeground != null;
+        mForeground = drawable;
+
+        if (drawable != null) {
+            drawable.setCallback(this);
+            drawable.setBounds(0, 0, getWidth(), getHeight());
+            if (drawable.isStateful()) {
+                drawable.setState(getDrawableState());
+            }
+        }
+
+        updateClipToOutline();
+        if (hadForeground != (drawable != null)) {
+            // The clip path is only kept up to date while it's needed.
+            markDirty(DIRTY_MATRIX);
+        } else {
+            invalidate();
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable dr) {
+        return super.verifyDrawable(dr) || dr == mForeground;
+    }
+
+    @Override
+    public void jumpDrawablesToCurrentState() {
+        super.jumpDrawablesToCurrentState();
+        if (mForeground != null) mForeground.jumpToCurrentState();
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        // Only the foreground is invalidated, the setup of the image is untouched.
+        if (mForeground != null && mForeground.isStateful()) {
+            mForeground.setState(getDrawableState());
+        }
+    }
+
+    public int getCorner() {
+        return mCorner;
+    }
+
+    /**
+     * Sets the same radius to all the corners.
+     */
+    public void setCorner(int corner) {
+        setCornerRadii(corner, corner, corner, corner);
+    }
+
+    /**
+     * Sets the radius of each corner. Uniform radii, or radii rounding only one side such
+     * as the top corners of a card, are clipped by the outline since Lollipop.
+     */
+    public void setCornerRadii(int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        if (topLeft == mTopLeftCorner && topRight == mTopRightCorner
+                && bottomRight == mBottomRightCorner && bottomLeft == mBottomLeftCorner
+                && topLeft == mCorner) {
+            return;
+        }
+
+        mCorner = topLeft;
+        mTopLeftCorner = topLeft;
+        mTopRightCorner = topRight;
+        mBottomRightCorner = bottomRight;
+        mBottomLeftCorner = bottomLeft;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            updateClipToOutline();
+            invalidateOutline();
+        }
+        markDirty(DIRTY_MATRIX);
+    }
+
+    private boolean isUniformCorner() {
+        return mIsCircle || (mTopLeftCorner == mTopRightCorner
+                && mTopRightCorner == mBottomRightCorner
+                && mBottomRightCorner == mBottomLeftCorner);
     }
 
     public int getBorderColor() {
@@ -133,8 +471,7 @@ public class CornerImageView extends ImageView {
     public void setBorderColor(int color) {
         if (color != mBorderColor) {
             mBorderColor = color;
-            mBorderPaint.setColor(mBorderColor);
-            invalidate();
+            markDirty(DIRTY_BORDER);
         }
     }
 
@@ -145,70 +482,277 @@ public class CornerImageView extends ImageView {
     public void setBorderWidth(int width) {
         if (width != mBorderWidth) {
             mBorderWidth = width;
-            setup();
+            markDirty(DIRTY_BORDER | DIRTY_MATRIX);
         }
     }
 
     @Override
     public void setImageBitmap(Bitmap bm) {
+        // Routed through setImageDrawable.
         super.setImageBitmap(bm);
-        mBitmap = bm;
-        setup();
     }
 
     @Override
     public void setImageDrawable(Drawable drawable) {
+        cancelLoad();
+        final Bitmap oldBitmap = mBitmap;
         super.setImageDrawable(drawable);
-        mBitmap = ImageUtils.getBitmapFromDrawable(drawable);
-        setup();
+        mBitmap = getBitmapFromDrawable(drawable);
+        releaseLoadedBitmap(oldBitmap);
+        onBitmapChanged();
     }
 
     @Override
     public void setImageResource(int resId) {
+        cancelLoad();
+        final Bitmap oldBitmap = mBitmap;
         super.setImageResource(resId);
-        mBitmap = ImageUtils.getBitmapFromDrawable(getDrawable());
-        setup();
+        mBitmap = getBitmapFromDrawable(getDrawable());
+        releaseLoadedBitmap(oldBitmap);
+        onBitmapChanged();
     }
 
     @Override
     public void setImageURI(Uri uri) {
+        cancelLoad();
+        final Bitmap oldBitmap = mBitmap;
         super.setImageURI(uri);
-        mBitmap = ImageUtils.getBitmapFromDrawable(getDrawable());
-        setup();
+        mBitmap = getBitmapFromDrawable(getDrawable());
+        releaseLoadedBitmap(oldBitmap);
+        onBitmapChanged();
+    }
+
+    /**
+     * Sets the content of this view to the image at the given uri. Unlike
+     * {@link #setImageURI(Uri)}, the image is decoded on a background thread and sampled
+     * down to the size of this view. Nothing is shown until the decode finishes, and a
+     * pending decode is dropped when another image is set.
+     *
+     * @param uri the uri of the image, or null to clear the content
+     */
+    public void setImageURIAsync(Uri uri) {
+        cancelLoad();
+        final Bitmap oldBitmap = mBitmap;
+        super.setImageDrawable(null);
+        mBitmap = null;
+        releaseLoadedBitmap(oldBitmap);
+        onBitmapChanged();
+        mLoadUri = uri;
+        startLoadIfReady();
+    }
+
+    /**
+     * Sets whether {@link #setImageURIAsync(Uri)} decodes only the center-cropped region
+     * of the image which this view shows, instead of the whole image. This saves memory
+     * for images much wider or taller than this view, such as banners and screenshots.
+     */
+    public void setRegionDecodeEnabled(boolean enabled) {
+        mRegionDecodeEnabled = enabled;
+    }
+
+    public boolean isRegionDecodeEnabled() {
+        return mRegionDecodeEnabled;
+    }
+
+    /**
+     * Sets how the images set by {@link #setImageURIAsync(Uri)} choose their bitmap config.
+     *
+     * @param policy one of the {@link BitmapConfigPolicy} policies, or -1 to use
+     *               {@link BitmapConfigPolicy#getDefaultPolicy()}
+     */
+    public void setBitmapConfigPolicy(int policy) {
+        mConfigPolicy = policy;
+    }
+
+    public int getBitmapConfigPolicy() {
+        return mConfigPolicy >= 0 ? mConfigPolicy : BitmapConfigPolicy.getDefaultPolicy();
+    }
+
+    private void startLoadIfReady() {
+        if (mLoadUri == null || mLoadTask != null) {
+            return;
+        }
+
+        final int width = getMeasuredWidth() - mBorderWidth * 2;
+        final int height = getMeasuredHeight() - mBorderWidth * 2;
+        if (width <= 0 || height <= 0) {
+            // Started again by onSizeChanged.
+            return;
+        }
+
+        final int generation = ++mLoadGeneration;
+        final Uri uri = mLoadUri;
+        final BitmapLoader.Request request = new BitmapLoader.Request(uri, width, height);
+        request.cropRegion = mRegionDecodeEnabled;
+        request.configPolicy = getBitmapConfigPolicy();
+        request.allowHardware = !mSoftwareBitmapRequired && isHardwareAccelerated()
+                && getLayerType() != LAYER_TYPE_SOFTWARE;
+        mLoadTask = BitmapLoader.load(getContext(), request, new BitmapLoader.Callback() {
+            @Override
+            public void onBitmapLoaded(Bitmap bitmap) {
+                if (generation != mLoadGeneration) {
+                    BitmapPool.put(bitmap);
+                    return;
+                }
+                mLoadTask = null;
+                mLoadUri = null;
+                mLoadedUri = bitmap != null ? uri : null;
+                if (bitmap != null) {
+                    CornerImageView.super.setImageDrawable(
+                            new BitmapDrawable(getResources(), bitmap));
+                }
+                mBitmap = bitmap;
+                onBitmapChanged();
+            }
+        });
+    }
+
+    /**
+     * Puts the bitmap back into {@link BitmapPool} if it was decoded by this view and is no
+     * longer displayed.
+     */
+    private void releaseLoadedBitmap(Bitmap bitmap) {
+        if (mLoadedUri == null || bitmap == null || bitmap == mBitmap) {
+            return;
+        }
+        mLoadedUri = null;
+        BitmapShaderCache.remove(bitmap);
+        BitmapPool.put(bitmap);
+    }
+
+    private void cancelLoad() {
+        // May run from ImageView's constructor, so only fields without initializers are used.
+        if (mLoadTask != null) {
+            mLoadTask.cancel(true);
+            mLoadTask = null;
+        }
+        mLoadUri = null;
+        mLoadGeneration++;
     }
 
     @Override
     public void setColorFilter(ColorFilter cf) {
         if (cf != mColorFilter) {
             mColorFilter = cf;
-            mBitmapPaint.setColorFilter(mColorFilter);
-            setup();
+            // Applies to the drawable when it is drawn without a shader.
+            super.setColorFilter(cf);
+            markDirty(DIRTY_PAINT);
         }
     }
 
+    private void onBitmapChanged() {
+        updateClipToOutline();
+        markDirty(DIRTY_SHADER);
+    }
+
+    /**
+     * Schedules work for {@link #setup()}, which runs once before the next draw no matter
+     * how many properties change in between.
+     */
+    private void markDirty(int flags) {
+        // May run from ImageView's constructor, so only fields without initializers are used.
+        mDirtyFlags |= flags;
+        invalidate();
+    }
+
     private void setup() {
-        if (!mReady) {
-            mSetupPending = true;
+        int flags = mDirtyFlags;
+        if (flags == 0) {
             return;
         }
+        mDirtyFlags = 0;
 
-        if (mBitmap == null) {
-            return;
+        if ((flags & DIRTY_BORDER) != 0) {
+            mBorderPaint.setStyle(Paint.Style.STROKE);
+            mBorderPaint.setAntiAlias(true);
+            mBorderPaint.setColor(mBorderColor);
+            mBorderPaint.setStrokeWidth(mBorderWidth);
+        }
+
+        if ((flags & DIRTY_PAINT) != 0) {
+            mBitmapPaint.setAntiAlias(true);
+        }
+
+        if ((flags & (DIRTY_SHADER | DIRTY_MATRIX)) != 0 && updateFrameBuffer()) {
+            flags |= DIRTY_SHADER;
+        }
+
+        if ((flags & DIRTY_SHADER) != 0) {
+            final Bitmap bitmap = mBitmap != null ? mBitmap : mFrameBitmap;
+            mBitmapShader = mBitmap != null ? BitmapShaderCache.obtain(mBitmap) : mFrameShader;
+            mBitmapPaint.setShader(mBitmapShader);
+            if (mBitmapShader != null) {
+                mBitmapWidth = bitmap.getWidth();
+                mBitmapHeight = bitmap.getHeight();
+            }
         }
 
-        mBitmapShader = new BitmapShader(mBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        if ((flags & (DIRTY_PAINT | DIRTY_SHADER)) != 0) {
+            // The frame buffer holds frames the drawable already drew with the filter.
+            final boolean frame = mFrameShader != null && mBitmapShader == mFrameShader;
+            mBitmapPaint.setColorFilter(frame ? null : mColorFilter);
+        }
 
-        mBitmapPaint.setAntiAlias(true);
-        mBitmapPaint.setShader(mBitmapShader);
+        if ((flags & (DIRTY_SHADER | DIRTY_MATRIX)) != 0) {
+            if (mBitmapShader != null) {
+                setupShaderGeometry();
+            } else {
+                setupDrawableGeometry();
+            }
+        }
+    }
 
-        mBorderPaint.setStyle(Paint.Style.STROKE);
-        mBorderPaint.setAntiAlias(true);
-        mBorderPaint.setColor(mBorderColor);
-        mBorderPaint.setStrokeWidth(mBorderWidth);
+    /**
+     * Allocates, resizes or releases the frame buffer of an animated drawable. Outline
+     * clipping is cheaper since Lollipop, so the frame buffer is only used before.
+     *
+     * @return true if the frame buffer changed
+     */
+    private boolean updateFrameBuffer() {
+        final boolean animated = mBitmap == null && getDrawable() instanceof Animatable
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP;
+        final int width = getWidth() - mBorderWidth * 2;
+        final int height = getHeight() - mBorderWidth * 2;
+        if (!animated || width <= 0 || height <= 0) {
+            return releaseFrameBuffer();
+        }
 
-        mBitmapWidth = mBitmap.getWidth();
-        mBitmapHeight = mBitmap.getHeight();
+        if (mFrameBitmap != null && mFrameBitmap.getWidth() == width
+                && mFrameBitmap.getHeight() == height) {
+            return false;
+        }
 
+        releaseFrameBuffer();
+        Bitmap bitmap = BitmapPool.get(width, height, Bitmap.Config.ARGB_8888);
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        if (mFrameCanvas == null) {
+            mFrameCanvas = new Canvas();
+        }
+        mFrameCanvas.setBitmap(bitmap);
+        mFrameBitmap = bitmap;
+        mFrameShader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        mFrameDirty = true;
+        return true;
+    }
+
+    /**
+     * @return true if there was a frame buffer to release
+     */
+    private boolean releaseFrameBuffer() {
+        if (mFrameBitmap == null) {
+            return false;
+        }
+
+        mFrameCanvas.setBitmap(null);
+        BitmapPool.put(mFrameBitmap);
+        mFrameBitmap = null;
+        mFrameShader = null;
+        return true;
+    }
+
+    private void setupShaderGeometry() {
         if (mIsCircle) {
             mCorner = mBitmapWidth < mBitmapHeight ? mBitmapWidth / 2 : mBitmapHeight / 2;
         }
@@ -219,7 +763,143 @@ public class CornerImageView extends ImageView {
                 mBorderRect.height() - mBorderWidth);
 
         updateShaderMatrix();
-        invalidate();
+
+        if (!isUniformCorner()) {
+            if (!isBitmapClippedByOutline()) {
+                fillRadii(mShaderScale);
+                mBitmapPath.reset();
+                mBitmapPath.addRoundRect(mBitmapRect, mRadii, Path.Direction.CW);
+            }
+            updateBorderPath();
+        }
+
+        if (mForeground != null && (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP
+                || !shouldClipToOutline())) {
+            fillRadii(1f);
+            mClipPath.reset();
+            mClipPath.addRoundRect(mDrawableRect, mRadii, Path.Direction.CW);
+        }
+    }
+
+    private void setupDrawableGeometry() {
+        mBorderRect.set(0, 0, getWidth(), getHeight());
+
+        if (mIsCircle) {
+            mCorner = (int) Math.min(mBorderRect.width(), mBorderRect.height()) / 2;
+        }
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || !isOutlineClipSupported()) {
+            fillRadii(1f);
+            mClipPath.reset();
+            mClipPath.addRoundRect(mBorderRect, mRadii, Path.Direction.CW);
+        }
+
+        if (!isUniformCorner()) {
+            updateBorderPath();
+        }
+    }
+
+    private void updateBorderPath() {
+        fillRadii(1f);
+        mBorderPath.reset();
+        mBorderPath.addRoundRect(mBorderRect, mRadii, Path.Direction.CW);
+    }
+
+    /**
+     * Fills mRadii with the corner radii divided by the given scale.
+     */
+    private void fillRadii(float scale) {
+        final boolean uniform = isUniformCorner();
+        final float topLeft = (uniform ? mCorner : mTopLeftCorner) / scale;
+        final float topRight = (uniform ? mCorner : mTopRightCorner) / scale;
+        final float bottomRight = (uniform ? mCorner : mBottomRightCorner) / scale;
+        final float bottomLeft = (uniform ? mCorner : mBottomLeftCorner) / scale;
+        mRadii[0] = mRadii[1] = topLeft;
+        mRadii[2] = mRadii[3] = topRight;
+        mRadii[4] = mRadii[5] = bottomRight;
+        mRadii[6] = mRadii[7] = bottomLeft;
+    }
+
+    private boolean isOutlineClipSupported() {
+        return getOutlineRect(0, 0, null) >= 0;
+    }
+
+    /**
+     * Computes the round rect outline which clips this view to its corners. Corners that
+     * aren't rounded are hidden by extending the rect past the bounds of this view.
+     *
+     * @param outRect receives the rect of the outline, may be null
+     * @return the radius of the outline, or -1 if the corners can't be clipped by a round
+     * rect outline
+     */
+    private int getOutlineRect(int width, int height, Rect outRect) {
+        // May run from ImageView's constructor, so only fields without initializers are used.
+        final int tl = mTopLeftCorner;
+        final int tr = mTopRightCorner;
+        final int br = mBottomRightCorner;
+        final int bl = mBottomLeftCorner;
+
+        if (mIsCircle) {
+            setRect(outRect, 0, 0, width, height);
+            return Math.min(width, height) / 2;
+        } else if (tl == tr && tr == br && br == bl) {
+            setRect(outRect, 0, 0, width, height);
+            return tl;
+        } else if (tl == tr && br == 0 && bl == 0) {
+            setRect(outRect, 0, 0, width, height + tl);
+            return tl;
+        } else if (br == bl && tl == 0 && tr == 0) {
+            setRect(outRect, 0, -br, width, height);
+            return br;
+        } else if (tl == bl && tr == 0 && br == 0) {
+            setRect(outRect, 0, 0, width + tl, height);
+            return tl;
+        } else if (tr == br && tl == 0 && bl == 0) {
+            setRect(outRect, -tr, 0, width, height);
+            return tr;
+        }
+        return -1;
+    }
+
+    private static void setRect(Rect rect, int left, int top, int right, int bottom) {
+        if (rect != null) {
+            rect.set(left, top, right, bottom);
+        }
+    }
+
+    /**
+     * Clips to the outline when drawing a drawable or a foreground which isn't rounded
+     * by the shader, or a bitmap whose corners differ.
+     */
+    private boolean shouldClipToOutline() {
+        return isOutlineClipSupported()
+                && (mBitmap == null || mForeground != null || !isUniformCorner());
+    }
+
+    /**
+     * Whether the bitmap with non-uniform corners is drawn as a plain rect clipped by the
+     * outline, rather than as a path which is rasterized in software before Oreo.
+     */
+    private boolean isBitmapClippedByOutline() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && isOutlineClipSupported();
+    }
+
+    private void updateClipToOutline() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            setClipToOutline(shouldClipToOutline());
+        }
+    }
+
+    /**
+     * Returns the bitmap which can be drawn through a shader, or null if the drawable
+     * should be clipped and drawn directly.
+     */
+    private static Bitmap getBitmapFromDrawable(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            return ((BitmapDrawable) drawable).getBitmap();
+        }
+        return null;
     }
 
     private void updateShaderMatrix() {
@@ -238,9 +918,28 @@ public class CornerImageView extends ImageView {
         }
 
         mShaderMatrix.setScale(scale, scale);
-        mShaderMatrix.postTranslate((int) (dx + 0.5f) + mBorderWidth,
-                (int) (dy + 0.5f) + mBorderWidth);
+        final float tx = (int) (dx + 0.5f) + mBorderWidth;
+        final float ty = (int) (dy + 0.5f) + mBorderWidth;
+        mShaderMatrix.postTranslate(tx, ty);
+        mShaderScale = scale;
+
+        // The rect in bitmap space which mShaderMatrix maps back onto mDrawableRect.
+        mBitmapRect.set((mDrawableRect.left - tx) / scale, (mDrawableRect.top - ty) / scale,
+                (mDrawableRect.right - tx) / scale, (mDrawableRect.bottom - ty) / scale);
+    }
 
-        mBitmapShader.setLocalMatrix(mShaderMatrix);
+    private class CornerOutlineProvider extends ViewOutlineProvider {
+
+        @Override
+        public void getOutline(View view, Outline outline) {
+            // Computed here as the outline is rebuilt on size changes before setup() runs.
+            final int corner = getOutlineRect(view.getWidth(), view.getHeight(), mOutlineRect);
+            if (corner >= 0) {
+                outline.setRoundRect(mOutlineRect, corner);
+            } else {
+                // Clipped by a path instead.
+                outline.setRect(0, 0, view.getWidth(), view.getHeight());
+            }
+        }
     }
 }
\ No newline at end of file
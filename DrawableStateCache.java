@@ -0,0 +1,63 @@
+package cn.dream.android.appstore.ui.view;
+
+import java.util.IdentityHashMap;
+
+/**
+ * 合并后的drawable state数组的缓存：View返回的基础状态数组是共享的，
+ * 以它为key缓存合并了额外状态的数组，刷新状态时不再分配新数组。只能在主线程使用。
+ */
+public final class DrawableStateCache {
+
+    private static final int MAX_SIZE = 64;
+
+    private static int sAllocationCount;
+
+    private final int[] mExtraState;
+    /** The merged arrays by the identity of their base arrays. */
+    private final IdentityHashMap<int[], int[]> mMerged = new IdentityHashMap<int[], int[]>();
+
+    /**
+     * @param extraState the states merged into every base state
+     */
+    DrawableStateCache(int[] extraState) {
+        mExtraState = extraState;
+    }
+
+    /**
+     * Returns the base state merged with the extra state. The result is shared and must
+     * not be modified.
+     *
+     * @param baseState a state returned by {@code View.onCreateDrawableState(0)}
+     */
+    int[] merge(int[] baseState) {
+        int[] merged = mMerged.get(baseState);
+        if (merged == null) {
+            // Bases are shared by the views, so only a few ever show up.
+            if (mMerged.size() >= MAX_SIZE) {
+                mMerged.clear();
+            }
+
+            int length = baseState.length;
+            while (length > 0 && baseState[length - 1] == 0) {
+                length--;
+            }
+            merged = new int[length + mExtraState.length];
+            System.arraycopy(baseState, 0, merged, 0, length);
+            System.arraycopy(mExtraState, 0, merged, length, mExtraState.length);
+            mMerged.put(baseState, merged);
+            sAllocationCount++;
+        }
+        return merged;
+    }
+
+    /**
+     * Returns how many merged arrays were allocated by all the caches.
+     */
+    public static int getAllocationCount() {
+        return sAllocationCount;
+    }
+
+    public static void resetStats() {
+        sAllocationCount = 0;
+    }
+}
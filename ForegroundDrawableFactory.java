@@ -0,0 +1,193 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.StateListDrawable;
+import android.os.Build;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+import cn.dream.android.appstore.util.ResourcesUtil;
+
+/**
+ * 前景Drawable的工厂：同一个资源只加载一次，所有实例共享ConstantState。
+ * <p>
+ * 处于静止状态的View共用同一个实例绘制，只有被按下或设置了透明度、着色的View才创建自己的实例。
+ * 只能在主线程使用。
+ */
+public final class ForegroundDrawableFactory {
+
+    /** The state of a view which is neither pressed, focused nor selected. */
+    private static final int[] RESTING_STATE = new int[]{
+            android.R.attr.state_enabled, android.R.attr.state_window_focused
+    };
+
+    private static final SparseArray<Drawable.ConstantState> sStates =
+            new SparseArray<Drawable.ConstantState>();
+    private static final SparseArray<Drawable> sRestingDrawables = new SparseArray<Drawable>();
+
+    /**
+     * The states foregrounds are assumed to react to when their selector can't be
+     * inspected. Hover, window focus and acceleration are left out as foregrounds rarely
+     * depend on them, while most views have them.
+     */
+    private static final int[] DEFAULT_REACTING_STATES = new int[]{
+            android.R.attr.state_enabled, android.R.attr.state_pressed,
+            android.R.attr.state_focused, android.R.attr.state_selected,
+            android.R.attr.state_checked, android.R.attr.state_activated
+    };
+
+    /** The states each resource reacts to. */
+    private static final SparseArray<int[]> sReactingStates = new SparseArray<int[]>();
+    /** The configuration the drawables were loaded with. */
+    private static Configuration sConfiguration;
+
+    private static int sSharedCount;
+    private static int sCreatedCount;
+
+    private ForegroundDrawableFactory() {
+    }
+
+    /**
+     * Returns the instance shared by all the views in the resting state, or null if the
+     * drawable can't be shared. The instance must not be mutated nor given a callback.
+     */
+    static Drawable getResting(Context context, int resId) {
+        final Drawable.ConstantState state = getConstantState(context, resId);
+        if (state == null) {
+            return null;
+        }
+
+        Drawable drawable = sRestingDrawables.get(resId);
+        if (drawable == null) {
+            drawable = state.newDrawable(context.getResources());
+            if (drawable.isStateful()) {
+                drawable.setState(RESTING_STATE);
+            }
+            sRestingDrawables.put(resId, drawable);
+        }
+        sSharedCount++;
+        return drawable;
+    }
+
+    /**
+     * Returns a new instance sharing the constant state of the resource.
+     */
+    static Drawable newDrawable(Context context, int resId) {
+        final Drawable.ConstantState state = getConstantState(context, resId);
+        sCreatedCount++;
+        if (state == null) {
+            return ResourcesUtil.getDrawable(context, resId);
+        }
+        return state.newDrawable(context.getResources());
+    }
+
+    private static Drawable.ConstantState getConstantState(Context context, int resId) {
+        final Resources res = context.getResources();
+        if (sConfiguration == null || !sConfiguration.equals(res.getConfiguration())) {
+            clear();
+            sConfiguration = new Configuration(res.getConfiguration());
+        }
+
+        Drawable.ConstantState state = sStates.get(resId);
+        if (state == null && sStates.indexOfKey(resId) < 0) {
+            final Drawable drawable = ResourcesUtil.getDrawable(context, resId);
+            state = drawable != null ? drawable.getConstantState() : null;
+            // A null state is kept too, so that the resource is not loaded again.
+            sStates.put(resId, state);
+        }
+        return state;
+    }
+
+    /**
+     * Whether a view in the given drawable state can draw the shared resting instance of
+     * the resource. States the drawable doesn't react to are ignored.
+     */
+    static boolean isResting(int resId, int[] state) {
+        int[] reacting = sReactingStates.get(resId);
+        if (reacting == null) {
+            final Drawable resting = sRestingDrawables.get(resId);
+            if (resting == null) {
+                // Cleared since the view got it; assume the usual states until reloaded.
+                reacting = DEFAULT_REACTING_STATES;
+            } else {
+                reacting = getReactingStates(resting);
+                sReactingStates.put(resId, reacting);
+            }
+        }
+
+        for (int attr : reacting) {
+            if (contains(state, attr) != contains(RESTING_STATE, attr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] getReactingStates(Drawable drawable) {
+        if (!drawable.isStateful()) {
+            return new int[0];
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                && drawable instanceof StateListDrawable) {
+            return getSelectorStates((StateListDrawable) drawable);
+        }
+        return DEFAULT_REACTING_STATES;
+    }
+
+    /**
+     * Returns the states the selector matches on, positively or negatively.
+     */
+    @TargetApi(Build.VERSION_CODES.Q)
+    private static int[] getSelectorStates(StateListDrawable drawable) {
+        final ArrayList<Integer> attrs = new ArrayList<Integer>();
+        for (int i = 0; i < drawable.getStateCount(); i++) {
+            for (int spec : drawable.getStateSet(i)) {
+                final int attr = Math.abs(spec);
+                if (attr != 0 && !attrs.contains(attr)) {
+                    attrs.add(attr);
+                }
+            }
+        }
+
+        final int[] states = new int[attrs.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = attrs.get(i);
+        }
+        return states;
+    }
+
+    private static boolean contains(int[] state, int attr) {
+        for (int s : state) {
+            if (s == attr) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how many times the resting instance was shared instead of creating one.
+     */
+    public static int getSharedCount() {
+        return sSharedCount;
+    }
+
+    /**
+     * Returns how many per-view instances were created.
+     */
+    public static int getCreatedCount() {
+        return sCreatedCount;
+    }
+
+    public static void clear() {
+        sStates.clear();
+        sRestingDrawables.clear();
+        sReactingStates.clear();
+        sConfiguration = null;
+    }
+}
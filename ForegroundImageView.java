@@ -3,6 +3,9 @@ package cn.dream.android.appstore.ui.view;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.widget.ImageView;
@@ -12,11 +15,30 @@ import cn.dream.android.appstore.util.ResourcesUtil;
 
 /**
  * 带前景的ImageView，主要为了实现点击图标时，显示遮罩效果
+ * <p>
+ * 前景不影响测量，更换前景时不会requestLayout。
+ * <p>
+ * 通过资源设置的前景由{@link ForegroundDrawableFactory}共享，View被按下或设置了透明度、
+ * 着色时才创建自己的实例。
  */
 public class ForegroundImageView extends ImageView {
 
+    /** The number of layout requests setForeground avoided, main thread only. */
+    private static int sAvoidedLayoutCount;
+
     protected Drawable mForeground;
 
+    /** The resource of the foreground when it comes from ForegroundDrawableFactory. */
+    private int mForegroundResId;
+    /** The shared instance drawn until the view needs a foreground of its own. */
+    private Drawable mRestingForeground;
+
+    /**
+     * Whether the constructor of this class started. Since M the constructor of View calls
+     * {@link #setForeground(Drawable)} with the android:foreground it inflated itself.
+     */
+    private boolean mConstructed;
+
     public ForegroundImageView(Context context) {
         this(context, null);
     }
@@ -27,21 +49,91 @@ public class ForegroundImageView extends ImageView {
 
     public ForegroundImageView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        mConstructed = true;
 
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ForegroundImageView,
                 defStyleAttr, 0);
-        Drawable foreground = a.getDrawable(R.styleable.ForegroundImageView_android_foreground);
-        if (foreground != null) {
-            setForeground(foreground);
+        final int foregroundResId = a.getResourceId(
+                R.styleable.ForegroundImageView_android_foreground, 0);
+        if (foregroundResId != 0) {
+            setForegroundResource(foregroundResId);
+        } else {
+            Drawable foreground = a.getDrawable(
+                    R.styleable.ForegroundImageView_android_foreground);
+            if (foreground != null) {
+                setForeground(foreground);
+            }
         }
         a.recycle();
     }
 
     public void setForegroundResource(int drawableResId) {
-        setForeground(ResourcesUtil.getDrawable(getContext(), drawableResId));
+        if (drawableResId != 0 && drawableResId == mForegroundResId) return;
+
+        final Drawable resting = drawableResId != 0
+                ? ForegroundDrawableFactory.getResting(getContext(), drawableResId) : null;
+        if (resting == null) {
+            setForeground(ResourcesUtil.getDrawable(getContext(), drawableResId));
+            return;
+        }
+
+        swapForeground(null);
+        mForegroundResId = drawableResId;
+        mRestingForeground = resting;
+        if (!ForegroundDrawableFactory.isResting(mForegroundResId, getDrawableState())) {
+            ensureOwnForeground();
+        } else {
+            invalidate();
+        }
+        sAvoidedLayoutCount++;
     }
 
     public void setForeground(Drawable drawable) {
+        if (!mConstructed) {
+            // Called by View's constructor; the attribute is resolved through
+            // ForegroundDrawableFactory below instead, so the view doesn't keep its own copy.
+            return;
+        }
+        mForegroundResId = 0;
+        mRestingForeground = null;
+        swapForeground(drawable);
+        sAvoidedLayoutCount++;
+    }
+
+    /**
+     * Replaces the shared resting foreground with an instance of this view.
+     */
+    private void ensureOwnForeground() {
+        if (mRestingForeground != null) {
+            mRestingForeground = null;
+            swapForeground(ForegroundDrawableFactory.newDrawable(getContext(), mForegroundResId));
+        }
+    }
+
+    /**
+     * Sets the alpha of the foreground of this view only.
+     */
+    public void setForegroundAlpha(int alpha) {
+        ensureOwnForeground();
+        if (mForeground != null) {
+            mForeground.mutate().setAlpha(alpha);
+            invalidate();
+        }
+    }
+
+    /**
+     * Tints the foreground of this view only with the given color.
+     */
+    public void setForegroundTint(int color) {
+        ensureOwnForeground();
+        if (mForeground != null) {
+            mForeground.mutate().setColorFilter(
+                    new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP));
+            invalidate();
+        }
+    }
+
+    private void swapForeground(Drawable drawable) {
         if (mForeground == drawable) return;
 
         if (mForeground != null) {
@@ -56,11 +148,32 @@ public class ForegroundImageView extends ImageView {
             if (drawable.isStateful()) {
                 drawable.setState(getDrawableState());
             }
+            updateForegroundBounds(getWidth(), getHeight());
         }
-        requestLayout();
+
+        // The foreground covers the view and never changes its size, so a redraw is enough.
         invalidate();
     }
 
+    /**
+     * Returns how many layout requests were avoided by foreground changes.
+     */
+    public static int getAvoidedLayoutCount() {
+        return sAvoidedLayoutCount;
+    }
+
+    public static void resetStats() {
+        sAvoidedLayoutCount = 0;
+    }
+
+    private void updateForegroundBounds(int width, int height) {
+        final Rect bounds = mForeground.getBounds();
+        if (bounds.left != 0 || bounds.top != 0
+                || bounds.right != width || bounds.bottom != height) {
+            mForeground.setBounds(0, 0, width, height);
+        }
+    }
+
     @Override
     protected boolean verifyDrawable(Drawable dr) {
         return super.verifyDrawable(dr) || dr == mForeground;
@@ -75,8 +188,14 @@ public class ForegroundImageView extends ImageView {
     @Override
     protected void drawableStateChanged() {
         super.drawableStateChanged();
-        if (mForeground != null && mForeground.isStateful()) {
-            mForeground.setState(getDrawableState());
+        if (mRestingForeground != null
+                && !ForegroundDrawableFactory.isResting(mForegroundResId, getDrawableState())) {
+            ensureOwnForeground();
+        }
+        if (mForeground != null && mForeground.isStateful()
+                && mForeground.setState(getDrawableState())) {
+            // Repaints only the dirty bounds the foreground reports.
+            invalidateDrawable(mForeground);
         }
     }
 
@@ -84,17 +203,16 @@ public class ForegroundImageView extends ImageView {
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         if (mForeground != null) {
-            mForeground.setBounds(0, 0, getMeasuredWidth(), getMeasuredHeight());
-            invalidate();
+            updateForegroundBounds(getMeasuredWidth(), getMeasuredHeight());
         }
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        // A size change redraws the view already.
         if (mForeground != null) {
-            mForeground.setBounds(0, 0, w, h);
-            invalidate();
+            updateForegroundBounds(w, h);
         }
     }
 
@@ -103,6 +221,10 @@ public class ForegroundImageView extends ImageView {
         super.onDraw(canvas);
         if (mForeground != null) {
             mForeground.draw(canvas);
+        } else if (mRestingForeground != null) {
+            // The shared instance is sized for each view it is drawn in.
+            mRestingForeground.setBounds(0, 0, getWidth(), getHeight());
+            mRestingForeground.draw(canvas);
         }
     }
 }
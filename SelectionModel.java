@@ -0,0 +1,272 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.LongSparseArray;
+import android.widget.Checkable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 列表的选中状态：按位置保存在BitSet中，或按stable id保存在LongSparseArray中，
+ * 不会因为行被回收而丢失。
+ * <p>
+ * 绑定的Checkable控件（CheckableLinearLayout、CheckedImageView）会跟随选中状态变化，
+ * 控件的checked状态改变时也会写回。只能在主线程使用。
+ */
+public class SelectionModel implements Parcelable {
+
+    /**
+     * Listener notified when the selection changes.
+     */
+    public interface OnSelectionChangedListener {
+        /**
+         * Called when a single item changes.
+         */
+        void onSelectionChanged(SelectionModel model, long key, boolean selected);
+
+        /**
+         * Called when many items change at once, by {@link #selectAll(int)},
+         * {@link #setSelected(int, int, boolean)} or {@link #clear()}.
+         */
+        void onSelectionReset(SelectionModel model);
+    }
+
+    private static final Object SELECTED = new Object();
+
+    private final boolean mStableIds;
+    private final BitSet mPositions;
+    private final LongSparseArray<Object> mIds;
+
+    /** The bound views and their keys; views which are collected unbind themselves. */
+    private final Map<Checkable, Long> mBoundViews = new WeakHashMap<Checkable, Long>();
+    /** The view bound to each key, so that a single item is updated without a scan. */
+    private final LongSparseArray<WeakReference<Checkable>> mViewsByKey =
+            new LongSparseArray<WeakReference<Checkable>>();
+    private final ArrayList<OnSelectionChangedListener> mListeners =
+            new ArrayList<OnSelectionChangedListener>();
+
+    /**
+     * @param stableIds whether items are keyed by stable id rather than by position
+     */
+    public SelectionModel(boolean stableIds) {
+        mStableIds = stableIds;
+        mPositions = stableIds ? null : new BitSet();
+        mIds = stableIds ? new LongSparseArray<Object>() : null;
+    }
+
+    public boolean hasStableIds() {
+        return mStableIds;
+    }
+
+    public boolean isSelected(long key) {
+        return mStableIds ? mIds.get(key) != null : mPositions.get(toPosition(key));
+    }
+
+    public void setSelected(long key, boolean selected) {
+        if (isSelected(key) == selected) return;
+
+        if (mStableIds) {
+            if (selected) {
+                mIds.put(key, SELECTED);
+            } else {
+                mIds.remove(key);
+            }
+        } else {
+            mPositions.set(toPosition(key), selected);
+        }
+
+        final Checkable view = getBoundView(key);
+        if (view != null) {
+            view.setChecked(selected);
+        }
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onSelectionChanged(this, key, selected);
+        }
+    }
+
+    public void toggle(long key) {
+        setSelected(key, !isSelected(key));
+    }
+
+    /**
+     * Selects or deselects the positions from {@code from} inclusive to {@code to}
+     * exclusive. Only for models keyed by position.
+     */
+    public void setSelected(int from, int to, boolean selected) {
+        if (mStableIds) {
+            throw new IllegalStateException("Ranges need a model keyed by position");
+        }
+        mPositions.set(from, to, selected);
+        onReset();
+    }
+
+    /**
+     * Selects the first {@code count} positions. Only for models keyed by position.
+     */
+    public void selectAll(int count) {
+        setSelected(0, count, true);
+    }
+
+    public void clear() {
+        if (mStableIds) {
+            mIds.clear();
+        } else {
+            mPositions.clear();
+        }
+        onReset();
+    }
+
+    public int getSelectedCount() {
+        return mStableIds ? mIds.size() : mPositions.cardinality();
+    }
+
+    private void onReset() {
+        // All the bound views are refreshed together on the next frame.
+        CheckStateBatch.begin();
+        try {
+            for (Checkable view : snapshotBoundViews()) {
+                final Long key = mBoundViews.get(view);
+                if (key != null) {
+                    view.setChecked(isSelected(key));
+                }
+            }
+        } finally {
+            CheckStateBatch.end();
+        }
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onSelectionReset(this);
+        }
+    }
+
+    /**
+     * Binds the view to the item of the given key, replacing the item it was bound to.
+     * The view is checked as the item is selected right away.
+     */
+    public void bind(Checkable view, long key) {
+        unbind(view);
+        // A recycled row may still be indexed under the key; it loses it to this view.
+        final Checkable previous = getBoundView(key);
+        if (previous != null) {
+            mBoundViews.remove(previous);
+        }
+        mBoundViews.put(view, key);
+        mViewsByKey.put(key, new WeakReference<Checkable>(view));
+        view.setChecked(isSelected(key));
+    }
+
+    public void unbind(Checkable view) {
+        final Long key = mBoundViews.remove(view);
+        if (key != null && getBoundView(key) == view) {
+            mViewsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Returns the view bound to the key, or null if there is none or it was collected.
+     */
+    private Checkable getBoundView(long key) {
+        final WeakReference<Checkable> ref = mViewsByKey.get(key);
+        if (ref == null) {
+            return null;
+        }
+        final Checkable view = ref.get();
+        if (view == null) {
+            mViewsByKey.remove(key);
+        }
+        return view;
+    }
+
+    /**
+     * Copies the bound views strongly, as checking a view may bind or unbind views and
+     * views may be collected meanwhile.
+     */
+    private ArrayList<Checkable> snapshotBoundViews() {
+        final ArrayList<Checkable> views = new ArrayList<Checkable>(mBoundViews.size());
+        for (Checkable view : mBoundViews.keySet()) {
+            if (view != null) {
+                views.add(view);
+            }
+        }
+        return views;
+    }
+
+    public void addOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private static int toPosition(long key) {
+        if (key < 0 || key > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid position: " + key);
+        }
+        return (int) key;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Writes positions as runs of selected positions, so that a large contiguous selection
+     * takes a few ints, and stable ids as a sorted list.
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mStableIds ? 1 : 0);
+        if (mStableIds) {
+            final int size = mIds.size();
+            dest.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                dest.writeLong(mIds.keyAt(i));
+            }
+            return;
+        }
+
+        int runs = 0;
+        for (int start = mPositions.nextSetBit(0); start >= 0;
+             start = mPositions.nextSetBit(mPositions.nextClearBit(start))) {
+            runs++;
+        }
+        dest.writeInt(runs);
+        for (int start = mPositions.nextSetBit(0); start >= 0; ) {
+            final int end = mPositions.nextClearBit(start);
+            dest.writeInt(start);
+            dest.writeInt(end - start);
+            start = mPositions.nextSetBit(end);
+        }
+    }
+
+    protected SelectionModel(Parcel in) {
+        this(in.readInt() != 0);
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            if (mStableIds) {
+                mIds.append(in.readLong(), SELECTED);
+            } else {
+                final int start = in.readInt();
+                mPositions.set(start, start + in.readInt());
+            }
+        }
+    }
+
+    public static final Creator<SelectionModel> CREATOR = new Creator<SelectionModel>() {
+        @Override
+        public SelectionModel createFromParcel(Parcel in) {
+            return new SelectionModel(in);
+        }
+
+        @Override
+        public SelectionModel[] newArray(int size) {
+            return new SelectionModel[size];
+        }
+    };
+}
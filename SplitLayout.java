@@ -17,6 +17,9 @@ import cn.dream.android.appstore.R;
  * | | View 0 |------| View 2 |------| View 3 |------| View 4 | |
  * |  --------        --------        --------        --------  |
  *  ------------------------------------------------------------
+ * <p>
+ * 每个子控件记录上一次测量用的MeasureSpec和结果，MeasureSpec不变且子控件没有请求布局时
+ * 跳过测量。
  */
 public class SplitLayout extends ViewGroup {
 
@@ -33,6 +36,11 @@ public class SplitLayout extends ViewGroup {
 
     private int mTotalLength;
 
+    /** Incremented by each measure pass, to tell the children the uniform pass measured. */
+    private int mMeasureGeneration;
+
+    private int mSkippedMeasureCount;
+
     public SplitLayout(Context context) {
         this(context, null);
     }
@@ -59,6 +67,7 @@ public class SplitLayout extends ViewGroup {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mMeasureGeneration++;
         if (mOrientation == VERTICAL) {
             measureVertical(widthMeasureSpec, heightMeasureSpec);
         } else {
@@ -101,7 +110,8 @@ public class SplitLayout extends ViewGroup {
             measureChildBeforeLayout(child, i, widthMeasureSpec, 0,
                     heightMeasureSpec, mTotalLength);
 
-            final int childHeight = child.getMeasuredHeight();
+            // The child may still hold the result of the uniform pass.
+            final int childHeight = lp.primaryHeight;
             final int totalLength = mTotalLength;
             mTotalLength = Math.max(totalLength, totalLength + childHeight + lp.topMargin +
                     lp.bottomMargin + getSpaceWidth());
@@ -113,9 +123,9 @@ public class SplitLayout extends ViewGroup {
             }
 
             final int margin = lp.leftMargin + lp.rightMargin;
-            final int measuredWidth = child.getMeasuredWidth() + margin;
+            final int measuredWidth = lp.primaryWidth + margin;
             maxWidth = Math.max(maxWidth, measuredWidth);
-            childState = combineMeasuredStates(childState, child.getMeasuredState());
+            childState = combineMeasuredStates(childState, lp.primaryState);
 
             allFillParent = allFillParent && lp.width == LayoutParams.MATCH_PARENT;
 
@@ -151,6 +161,7 @@ public class SplitLayout extends ViewGroup {
         if (matchWidth) {
             forceUniformWidth(count, heightMeasureSpec);
         }
+        restorePrimaryMeasures(count);
     }
 
     private void forceUniformWidth(int count, int heightMeasureSpce) {
@@ -165,9 +176,9 @@ public class SplitLayout extends ViewGroup {
 
                 if (lp.width == LayoutParams.MATCH_PARENT) {
                     int oldHeight = lp.height;
-                    lp.height = child.getMeasuredHeight();
+                    lp.height = lp.primaryHeight;
 
-                    measureChildWithMargins(child, uniformMeasureSpec, 0, heightMeasureSpce, 0);
+                    measureChildUniform(child, uniformMeasureSpec, heightMeasureSpce);
                     lp.height = oldHeight;
                 }
             }
@@ -211,7 +222,8 @@ public class SplitLayout extends ViewGroup {
             measureChildBeforeLayout(child, i, widthMeasureSpec, mTotalLength,
                     heightMeasureSpec, 0);
 
-            final int childWidth = child.getMeasuredWidth();
+            // The child may still hold the result of the uniform pass.
+            final int childWidth = lp.primaryWidth;
             if (isExactly) {
                 mTotalLength += childWidth + lp.leftMargin + lp.rightMargin +
                         getSpaceWidth();
@@ -228,8 +240,8 @@ public class SplitLayout extends ViewGroup {
             }
 
             final int margin = lp.topMargin + lp.bottomMargin;
-            final int childHeight = child.getMeasuredHeight() + margin;
-            childState = combineMeasuredStates(childState, child.getMeasuredState());
+            final int childHeight = lp.primaryHeight + margin;
+            childState = combineMeasuredStates(childState, lp.primaryState);
 
             maxHeight = Math.max(maxHeight, childHeight);
 
@@ -267,6 +279,7 @@ public class SplitLayout extends ViewGroup {
         if (matchHeight) {
             forceUniformHeight(count, widthMeasureSpec);
         }
+        restorePrimaryMeasures(count);
     }
 
     private void forceUniformHeight(int count, int widthMeasureSpec) {
@@ -284,10 +297,10 @@ public class SplitLayout extends ViewGroup {
                     // Temporarily force children to reuse their old measured width
                     // FIXME: this may not be right for something like wrapping text?
                     int oldWidth = lp.width;
-                    lp.width = child.getMeasuredWidth();
+                    lp.width = lp.primaryWidth;
 
                     // Remeasure with new dimensions
-                    measureChildWithMargins(child, widthMeasureSpec, 0, uniformMeasureSpec, 0);
+                    measureChildUniform(child, widthMeasureSpec, uniformMeasureSpec);
                     lp.width = oldWidth;
                 }
             }
@@ -332,8 +345,91 @@ public class SplitLayout extends ViewGroup {
     void measureChildBeforeLayout(View child, int childIndex,
                                   int widthMeasureSpec, int totalWidth, int heightMeasureSpec,
                                   int totalHeight) {
-        measureChildWithMargins(child, widthMeasureSpec, totalWidth,
-                heightMeasureSpec, totalHeight);
+        final SplitLayout.LayoutParams lp = (SplitLayout.LayoutParams) child.getLayoutParams();
+        final int childWidthMeasureSpec = getChildMeasureSpec(widthMeasureSpec,
+                getPaddingLeft() + getPaddingRight() + lp.leftMargin + lp.rightMargin
+                        + totalWidth, lp.width);
+        final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
+                getPaddingTop() + getPaddingBottom() + lp.topMargin + lp.bottomMargin
+                        + totalHeight, lp.height);
+
+        if (lp.measuredPass != LayoutParams.PASS_NONE && !child.isLayoutRequested()
+                && lp.primaryWidthSpec == childWidthMeasureSpec
+                && lp.primaryHeightSpec == childHeightMeasureSpec) {
+            // The primary result is still in the layout params.
+            mSkippedMeasureCount++;
+            return;
+        }
+
+        child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+        lp.primaryWidthSpec = childWidthMeasureSpec;
+        lp.primaryHeightSpec = childHeightMeasureSpec;
+        lp.primaryWidth = child.getMeasuredWidth();
+        lp.primaryHeight = child.getMeasuredHeight();
+        lp.primaryState = child.getMeasuredState();
+        lp.measuredPass = LayoutParams.PASS_PRIMARY;
+    }
+
+    /**
+     * Measures a child to the uniform size of this layout, unless it was measured with the
+     * same specs by the last uniform pass and didn't request a layout since.
+     */
+    private void measureChildUniform(View child, int widthMeasureSpec,
+                                     int heightMeasureSpec) {
+        final SplitLayout.LayoutParams lp = (SplitLayout.LayoutParams) child.getLayoutParams();
+        final int childWidthMeasureSpec = getChildMeasureSpec(widthMeasureSpec,
+                getPaddingLeft() + getPaddingRight() + lp.leftMargin + lp.rightMargin,
+                lp.width);
+        final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
+                getPaddingTop() + getPaddingBottom() + lp.topMargin + lp.bottomMargin,
+                lp.height);
+
+        lp.uniformGeneration = mMeasureGeneration;
+        if (lp.measuredPass == LayoutParams.PASS_UNIFORM && !child.isLayoutRequested()
+                && lp.uniformWidthSpec == childWidthMeasureSpec
+                && lp.uniformHeightSpec == childHeightMeasureSpec) {
+            mSkippedMeasureCount++;
+            return;
+        }
+
+        child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+        lp.uniformWidthSpec = childWidthMeasureSpec;
+        lp.uniformHeightSpec = childHeightMeasureSpec;
+        lp.measuredPass = LayoutParams.PASS_UNIFORM;
+    }
+
+    /**
+     * Measures again with the primary specs the children whose primary measure was skipped
+     * while they still held the result of a uniform pass which didn't run this time.
+     */
+    private void restorePrimaryMeasures(int count) {
+        for (int i = 0; i < count; ++i) {
+            final View child = getChildAt(i);
+            if (child == null || child.getVisibility() == GONE) {
+                continue;
+            }
+
+            final SplitLayout.LayoutParams lp =
+                    (SplitLayout.LayoutParams) child.getLayoutParams();
+            if (lp.measuredPass == LayoutParams.PASS_UNIFORM
+                    && lp.uniformGeneration != mMeasureGeneration) {
+                child.measure(lp.primaryWidthSpec, lp.primaryHeightSpec);
+                lp.measuredPass = LayoutParams.PASS_PRIMARY;
+                mSkippedMeasureCount--;
+            }
+        }
+    }
+
+    /**
+     * Returns how many child measures were skipped because neither the specs nor the
+     * child changed.
+     */
+    public int getSkippedMeasureCount() {
+        return mSkippedMeasureCount;
+    }
+
+    public void resetSkippedMeasureCount() {
+        mSkippedMeasureCount = 0;
     }
 
     /**
@@ -727,6 +823,23 @@ public class SplitLayout extends ViewGroup {
         })
         public int gravity = -1;
 
+        static final int PASS_NONE = 0;
+        static final int PASS_PRIMARY = 1;
+        static final int PASS_UNIFORM = 2;
+
+        /** The pass the child was last measured by. */
+        int measuredPass = PASS_NONE;
+        /** The specs and the result of the last primary measure. */
+        int primaryWidthSpec;
+        int primaryHeightSpec;
+        int primaryWidth;
+        int primaryHeight;
+        int primaryState;
+        /** The specs of the last uniform measure. */
+        int uniformWidthSpec;
+        int uniformHeightSpec;
+        int uniformGeneration;
+
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
 
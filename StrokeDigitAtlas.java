@@ -0,0 +1,131 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+/**
+ * 描边数字的图集：每种样式只渲染一次0-9及少量符号，之后绘制数字时直接从图集中拷贝，
+ * 不需要再排版文字，也不分配String。
+ */
+final class StrokeDigitAtlas {
+
+    /** The glyphs in the atlas, digits first so that a digit is its own index. */
+    static final String GLYPHS = "0123456789-+,.:%";
+
+    static final int GLYPH_MINUS = 10;
+
+    private static final int MAX_ATLASES = 16;
+
+    private static final LruCache<StrokeTextCache.Key, StrokeDigitAtlas> sAtlases =
+            new LruCache<StrokeTextCache.Key, StrokeDigitAtlas>(MAX_ATLASES);
+
+    private final Bitmap mBitmap;
+    private final int[] mCellLeft = new int[GLYPHS.length()];
+    private final int[] mCellWidth = new int[GLYPHS.length()];
+    private final float[] mAdvance = new float[GLYPHS.length()];
+    private final int mPadding;
+
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+
+    /**
+     * Returns the shared atlas of the given style. The text of the key is ignored.
+     */
+    static StrokeDigitAtlas obtain(StrokeTextCache.Key key, Paint strokePaint, Paint fillPaint) {
+        StrokeDigitAtlas atlas = sAtlases.get(key);
+        if (atlas == null) {
+            atlas = new StrokeDigitAtlas(key, strokePaint, fillPaint);
+            sAtlases.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    private StrokeDigitAtlas(StrokeTextCache.Key key, Paint strokePaint, Paint fillPaint) {
+        // Alpha and color filter are applied when the atlas is drawn.
+        strokePaint = new Paint(strokePaint);
+        fillPaint = new Paint(fillPaint);
+        strokePaint.setColor(key.strokeColor);
+        strokePaint.setColorFilter(null);
+        fillPaint.setColor(key.textColor);
+        fillPaint.setColorFilter(null);
+
+        mPadding = key.strokeWidth;
+        final int count = GLYPHS.length();
+        int width = 0;
+        for (int i = 0; i < count; i++) {
+            mAdvance[i] = fillPaint.measureText(GLYPHS, i, i + 1);
+            mCellLeft[i] = width;
+            mCellWidth[i] = (int) Math.ceil(mAdvance[i]) + mPadding * 2;
+            width += mCellWidth[i];
+        }
+
+        final Paint.FontMetrics fm = fillPaint.getFontMetrics();
+        final int height = (int) Math.ceil(fm.descent - fm.ascent) + mPadding * 2;
+        mBitmap = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1),
+                Bitmap.Config.ARGB_8888);
+
+        final Canvas canvas = new Canvas(mBitmap);
+        final float y = mPadding - fm.ascent;
+        for (int i = 0; i < count; i++) {
+            final float x = mCellLeft[i] + mCellWidth[i] / 2f;
+            canvas.drawText(GLYPHS, i, i + 1, x, y, strokePaint);
+            canvas.drawText(GLYPHS, i, i + 1, x, y, fillPaint);
+        }
+    }
+
+    /**
+     * Fills {@code outGlyphs} with the glyph indexes of the given number.
+     *
+     * @return the number of glyphs, at most 11
+     */
+    static int toGlyphs(int number, int[] outGlyphs) {
+        long value = number;
+        int count = 0;
+        if (value < 0) {
+            outGlyphs[count++] = GLYPH_MINUS;
+            value = -value;
+        }
+
+        final int start = count;
+        do {
+            outGlyphs[count++] = (int) (value % 10);
+            value /= 10;
+        } while (value > 0);
+
+        // Digits were added least significant first.
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            final int tmp = outGlyphs[i];
+            outGlyphs[i] = outGlyphs[j];
+            outGlyphs[j] = tmp;
+        }
+        return count;
+    }
+
+    float measure(int[] glyphs, int count) {
+        float width = 0;
+        for (int i = 0; i < count; i++) {
+            width += mAdvance[glyphs[i]];
+        }
+        return width;
+    }
+
+    /**
+     * Draws the glyphs with their advances starting at {@code x}, the top of the text
+     * (without the stroke) at {@code top}.
+     */
+    void draw(Canvas canvas, int[] glyphs, int count, float x, float top, Paint paint) {
+        final int height = mBitmap.getHeight();
+        for (int i = 0; i < count; i++) {
+            final int glyph = glyphs[i];
+            final float left = x + mAdvance[glyph] / 2f - mCellWidth[glyph] / 2f;
+            mSrc.set(mCellLeft[glyph], 0, mCellLeft[glyph] + mCellWidth[glyph], height);
+            mDst.set(left, top - mPadding, left + mCellWidth[glyph], top - mPadding + height);
+            canvas.drawBitmap(mBitmap, mSrc, mDst, paint);
+            x += mAdvance[glyph];
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量绘制多个{@link StrokeTextDrawable}：样式相同的文字归为一组，先画所有描边再画所有填充，
+ * 每组只用一对Paint。
+ * <p>
+ * 单个文字变化时只重绘它所在的区域，不会重绘整批文字。
+ */
+public class StrokeTextBatch extends Drawable implements Drawable.Callback {
+
+    private final List<StrokeTextDrawable> mLabels = new ArrayList<StrokeTextDrawable>();
+
+    /** The plain text labels grouped by style, valid unless mGroupsDirty is set. */
+    private final List<Group> mGroups = new ArrayList<Group>();
+    /** The labels which are not plain text and draw themselves. */
+    private final List<StrokeTextDrawable> mOthers = new ArrayList<StrokeTextDrawable>();
+    /** The group of each grouped label, null for the labels which draw themselves. */
+    private final Map<StrokeTextDrawable, Group> mPlacements =
+            new IdentityHashMap<StrokeTextDrawable, Group>();
+    private boolean mGroupsDirty;
+
+    /** The union of the boxes of the labels changed since the last draw. */
+    private final Rect mDirtyRect = new Rect();
+    private final RectF mRectF = new RectF();
+
+    private int mAlpha = 255;
+
+    /**
+     * Adds a label to the batch. The label is drawn at its own position.
+     */
+    public void add(StrokeTextDrawable label) {
+        mLabels.add(label);
+        label.setCallback(this);
+        label.setAlpha(mAlpha);
+        mGroupsDirty = true;
+        invalidateLabel(label);
+    }
+
+    public void remove(StrokeTextDrawable label) {
+        if (mLabels.remove(label)) {
+            label.setCallback(null);
+            mGroupsDirty = true;
+            invalidateLabel(label);
+        }
+    }
+
+    public void clear() {
+        for (StrokeTextDrawable label : mLabels) {
+            label.setCallback(null);
+        }
+        mLabels.clear();
+        mPlacements.clear();
+        mGroupsDirty = true;
+        mDirtyRect.setEmpty();
+        invalidateSelf();
+    }
+
+    public int size() {
+        return mLabels.size();
+    }
+
+    private void invalidateLabel(StrokeTextDrawable label) {
+        mDirtyRect.union(label.getDirtyBounds());
+        invalidateSelf();
+    }
+
+    @Override
+    public void invalidateDrawable(Drawable who) {
+        final StrokeTextDrawable label = (StrokeTextDrawable) who;
+        // Text and position changes keep the label in its group; only a change of style
+        // or of the way it is drawn needs the groups rebuilt.
+        if (!mGroupsDirty && !isPlacementValid(label)) {
+            mGroupsDirty = true;
+        }
+        invalidateLabel(label);
+    }
+
+    private boolean isPlacementValid(StrokeTextDrawable label) {
+        if (!mPlacements.containsKey(label)) {
+            return false;
+        }
+
+        final Group group = mPlacements.get(label);
+        final boolean batchable = label.prepareForBatch();
+        if (group == null) {
+            return !batchable;
+        }
+        return batchable && sameStyle(group.strokePaint, label.getStrokePaint())
+                && sameStyle(group.fillPaint, label.getFillPaint());
+    }
+
+    @Override
+    public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        scheduleSelf(what, when);
+    }
+
+    @Override
+    public void unscheduleDrawable(Drawable who, Runnable what) {
+        unscheduleSelf(what);
+    }
+
+    /**
+     * Returns the boxes of the labels changed since the last draw, or the bounds if the
+     * whole batch has to be drawn.
+     */
+    @Override
+    public Rect getDirtyBounds() {
+        return mDirtyRect.isEmpty() ? getBounds() : mDirtyRect;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mGroupsDirty) {
+            regroup();
+        }
+
+        // All the strokes first, so that no fill is covered by the stroke of another label.
+        final int groupCount = mGroups.size();
+        for (int i = 0; i < groupCount; i++) {
+            final Group group = mGroups.get(i);
+            drawGroup(canvas, group, group.strokePaint);
+        }
+        for (int i = 0; i < groupCount; i++) {
+            final Group group = mGroups.get(i);
+            drawGroup(canvas, group, group.fillPaint);
+        }
+
+        final int otherCount = mOthers.size();
+        for (int i = 0; i < otherCount; i++) {
+            final StrokeTextDrawable label = mOthers.get(i);
+            if (!canvas.quickReject(toRectF(label.getDirtyBounds()), Canvas.EdgeType.AA)) {
+                label.draw(canvas);
+            }
+        }
+
+        mDirtyRect.setEmpty();
+    }
+
+    private void drawGroup(Canvas canvas, Group group, Paint paint) {
+        final List<StrokeTextDrawable> labels = group.labels;
+        final int count = labels.size();
+        for (int i = 0; i < count; i++) {
+            final StrokeTextDrawable label = labels.get(i);
+            if (!canvas.quickReject(toRectF(label.getDirtyBounds()), Canvas.EdgeType.AA)) {
+                canvas.drawText(label.getPlainText(), label.getX(), label.getBaseline(), paint);
+            }
+        }
+    }
+
+    private RectF toRectF(Rect rect) {
+        mRectF.set(rect);
+        return mRectF;
+    }
+
+    private void regroup() {
+        mGroupsDirty = false;
+        mGroups.clear();
+        mOthers.clear();
+        mPlacements.clear();
+
+        for (StrokeTextDrawable label : mLabels) {
+            if (!label.prepareForBatch()) {
+                mOthers.add(label);
+                mPlacements.put(label, null);
+                continue;
+            }
+
+            Group group = null;
+            for (Group g : mGroups) {
+                if (sameStyle(g.strokePaint, label.getStrokePaint())
+                        && sameStyle(g.fillPaint, label.getFillPaint())) {
+                    group = g;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new Group(label.getStrokePaint(), label.getFillPaint());
+                mGroups.add(group);
+            }
+            group.labels.add(label);
+            mPlacements.put(label, group);
+        }
+    }
+
+    private static boolean sameStyle(Paint a, Paint b) {
+        return a.getColor() == b.getColor()
+                && a.getTextSize() == b.getTextSize()
+                && a.getStrokeWidth() == b.getStrokeWidth()
+                && a.getTypeface() == b.getTypeface()
+                && a.getColorFilter() == b.getColorFilter();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mAlpha != alpha) {
+            mAlpha = alpha;
+            for (StrokeTextDrawable label : mLabels) {
+                label.setAlpha(alpha);
+            }
+            mGroupsDirty = true;
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        for (StrokeTextDrawable label : mLabels) {
+            label.setColorFilter(colorFilter);
+        }
+        mGroupsDirty = true;
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return mAlpha == 0 || mLabels.isEmpty() ? PixelFormat.TRANSPARENT
+                : PixelFormat.TRANSLUCENT;
+    }
+
+    /**
+     * The plain text labels drawn with the same paints. The paints are copied from the
+     * first label, so that a label changing its style no longer matches the group.
+     */
+    private static final class Group {
+        final Paint strokePaint;
+        final Paint fillPaint;
+        final List<StrokeTextDrawable> labels = new ArrayList<StrokeTextDrawable>();
+
+        Group(Paint strokePaint, Paint fillPaint) {
+            this.strokePaint = new Paint(strokePaint);
+            this.fillPaint = new Paint(fillPaint);
+        }
+    }
+}
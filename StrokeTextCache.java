@@ -0,0 +1,97 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.util.LruCache;
+
+/**
+ * 描边文字渲染结果的缓存，在所有StrokeTextDrawable之间共享，按字节数限制大小。
+ * <p>
+ * 被淘汰的Bitmap不会被recycle，仍在使用它的Drawable可以继续绘制。
+ */
+public final class StrokeTextCache {
+
+    private static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<Key, Bitmap> sCache = new LruCache<Key, Bitmap>(
+            DEFAULT_MAX_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    private StrokeTextCache() {
+    }
+
+    static Bitmap get(Key key) {
+        return sCache.get(key);
+    }
+
+    static void put(Key key, Bitmap bitmap) {
+        sCache.put(key, bitmap);
+    }
+
+    public static void resize(int maxBytes) {
+        sCache.resize(maxBytes);
+    }
+
+    public static void clear() {
+        sCache.evictAll();
+    }
+
+    public static int hitCount() {
+        return sCache.hitCount();
+    }
+
+    public static int missCount() {
+        return sCache.missCount();
+    }
+
+    /**
+     * The text and style a cached bitmap was rendered with.
+     */
+    static final class Key {
+        final String text;
+        final int textSize;
+        final int strokeWidth;
+        final int strokeColor;
+        final int textColor;
+        final Typeface typeface;
+
+        Key(String text, int textSize, int strokeWidth, int strokeColor, int textColor,
+            Typeface typeface) {
+            this.text = text;
+            this.textSize = textSize;
+            this.strokeWidth = strokeWidth;
+            this.strokeColor = strokeColor;
+            this.textColor = textColor;
+            this.typeface = typeface;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return textSize == key.textSize
+                    && strokeWidth == key.strokeWidth
+                    && strokeColor == key.strokeColor
+                    && textColor == key.textColor
+                    && text.equals(key.text)
+                    && (typeface == null ? key.typeface == null : typeface.equals(key.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + textSize;
+            result = 31 * result + strokeWidth;
+            result = 31 * result + strokeColor;
+            result = 31 * result + textColor;
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            return result;
+        }
+    }
+}
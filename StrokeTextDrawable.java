@@ -1,26 +1,87 @@
 package cn.dream.android.appstore.ui.view;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.ColorFilter;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.TextPaint;
 
 /**
  * 绘制带描边的字体
+ * <p>
+ * 描边和填充各用一个预先配置好的Paint，只在文字或样式变化时更新，绘制时只有两次drawText。
+ * <p>
+ * 开启缓存后，描边文字只渲染一次到Bitmap中，之后每次绘制直接画Bitmap，
+ * 相同文字和样式的Drawable共享同一个Bitmap。
+ * <p>
+ * 频繁变化的数字（计数、倒计时）可以用{@link #setNumber(int)}，从共享的数字图集中绘制。
+ * <p>
+ * 带样式的文字（Spanned）、多行文字或设置了最大宽度时，在后台线程排版，排版完成前
+ * 显示上一次的文字。
+ * <p>
+ * 字体可以通过{@link TypefaceRegistry}的key指定，字体加载完成前使用默认字体。
+ * <p>
+ * 需要动画改变字号或描边宽度时，可以开启距离场模式{@link #setSdfEnabled(boolean)}，
+ * 文字只渲染一次，之后每帧只缩放绘制同一张Bitmap。
  */
 public class StrokeTextDrawable extends Drawable {
-    
-    private final Paint mPaint;
-    private String mText;
+
+    private final Paint mStrokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private CharSequence mText;
     private float mX;
     private float mY;
     private int mTextSize;
     private int mStrokeWidth;
     private int mStrokeColor;
     private int mTextColor;
+    private int mAlpha = 255;
+
+    /** The metrics below are valid unless mMetricsDirty is set. */
+    private boolean mMetricsDirty = true;
+    private float mBaseline;
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    /** The size of the text without the stroke. */
+    private float mTextWidth;
+    private float mTextHeight;
+    /** The box of the glyphs including the stroke. */
+    private final Rect mTextBounds = new Rect();
+    private int mGlyphCount;
+
+    private boolean mCacheEnabled;
+    private Bitmap mCachedBitmap;
+
+    private boolean mNumberMode;
+    private int mNumber;
+    private StrokeDigitAtlas mAtlas;
+    private final int[] mGlyphs = new int[11];
+
+    private int mMaxWidth;
+    /** The laid out text, which may still be the previous text while a layout is built. */
+    private Layout mLayout;
+    private int mLayoutGeneration;
+
+    private boolean mSdfEnabled;
+    private Bitmap mSdfField;
+    private final Paint mSdfPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    /** The filters turning the field into the stroke and the fill at mSdfScale. */
+    private ColorMatrixColorFilter mSdfStrokeFilter;
+    private ColorMatrixColorFilter mSdfFillFilter;
+    private float mSdfScale;
+
+    /** The key of the typeface to use once it is loaded, null when resolved. */
+    private String mTypefaceKey;
+    private int mTypefaceGeneration;
 
-    public StrokeTextDrawable(String text,
+    public StrokeTextDrawable(CharSequence text,
                               float x,
                               float y,
                               int textSize,
@@ -34,56 +95,564 @@ public class StrokeTextDrawable extends Drawable {
         mStrokeWidth = strokeWidth;
         mStrokeColor = strokeColor;
         mTextColor = textColor;
-        mPaint = new Paint();
+        initPaint(mStrokePaint);
+        initPaint(mFillPaint);
+        mStrokePaint.setStyle(Paint.Style.STROKE);
+        mStrokePaint.setStrokeWidth(mStrokeWidth);
+        mFillPaint.setStyle(Paint.Style.FILL);
+        applyColors();
+        requestLayoutIfNeeded();
     }
 
-    public void setText(String text) {
+    public void setText(CharSequence text) {
+        // Repaints the box of the old text, then the box of the new one.
+        invalidateSelf();
         mText = text;
+        mNumberMode = false;
+        mCachedBitmap = null;
+        mSdfField = null;
+        mMetricsDirty = true;
+        requestLayoutIfNeeded();
+        invalidateSelf();
+    }
+
+    /**
+     * Moves the text so that its center is at {@code x} and its top at
+     * {@code y - textSize / 2}.
+     */
+    public void setPosition(float x, float y) {
+        if (mX != x || mY != y) {
+            invalidateSelf();
+            mX = x;
+            mY = y;
+            mMetricsDirty = true;
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Sets the width to wrap the text at, or 0 to not wrap.
+     */
+    public void setMaxWidth(int maxWidth) {
+        if (mMaxWidth != maxWidth) {
+            invalidateSelf();
+            mMaxWidth = maxWidth;
+            mMetricsDirty = true;
+            requestLayoutIfNeeded();
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Whether the text needs a layout: spanned, multi-line or wrapped text.
+     */
+    private boolean isLayoutText() {
+        return !(mText instanceof String) || mMaxWidth > 0
+                || ((String) mText).indexOf('\n') >= 0;
+    }
+
+    private void requestLayoutIfNeeded() {
+        final int generation = ++mLayoutGeneration;
+        if (mText == null || !isLayoutText()) {
+            mLayout = null;
+            return;
+        }
+
+        final TextPaint paint = new TextPaint(mFillPaint);
+        paint.setTextAlign(Paint.Align.LEFT);
+        paint.setColorFilter(null);
+        TextLayoutBuilder.build(mText, paint, mMaxWidth, new TextLayoutBuilder.Callback() {
+            @Override
+            public void onLayoutBuilt(Layout layout) {
+                if (generation == mLayoutGeneration) {
+                    invalidateSelf();
+                    mLayout = layout;
+                    mMetricsDirty = true;
+                    invalidateSelf();
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows the given number instead of the text. The number is drawn from a digit atlas
+     * shared by all the drawables of the same style, so frequent updates neither shape
+     * text nor allocate.
+     */
+    public void setNumber(int number) {
+        if (!mNumberMode || mNumber != number) {
+            invalidateSelf();
+            mNumberMode = true;
+            mNumber = number;
+            mMetricsDirty = true;
+            invalidateSelf();
+        }
+    }
+
+    public void setTextSize(int textSize) {
+        if (mTextSize != textSize) {
+            invalidateSelf();
+            mTextSize = textSize;
+            mStrokePaint.setTextSize(textSize);
+            mFillPaint.setTextSize(textSize);
+            mMetricsDirty = true;
+            onStyleChanged();
+            requestLayoutIfNeeded();
+            invalidateSelf();
+        }
+    }
+
+    public void setStrokeWidth(int strokeWidth) {
+        if (mStrokeWidth != strokeWidth) {
+            invalidateSelf();
+            mStrokeWidth = strokeWidth;
+            mStrokePaint.setStrokeWidth(strokeWidth);
+            mMetricsDirty = true;
+            onStyleChanged();
+            invalidateSelf();
+        }
+    }
+
+    public void setStrokeColor(int strokeColor) {
+        if (mStrokeColor != strokeColor) {
+            mStrokeColor = strokeColor;
+            applyColors();
+            onStyleChanged();
+            invalidateSelf();
+        }
+    }
+
+    public void setTextColor(int textColor) {
+        if (mTextColor != textColor) {
+            mTextColor = textColor;
+            applyColors();
+            onStyleChanged();
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Uses the typeface registered in {@link TypefaceRegistry} under the given key. The
+     * default typeface is used until it is loaded.
+     */
+    public void setTypefaceKey(String key) {
+        final int generation = ++mTypefaceGeneration;
+        mTypefaceKey = key;
+        final Typeface typeface = TypefaceRegistry.get(key, new TypefaceRegistry.Callback() {
+            @Override
+            public void onTypefaceLoaded(Typeface typeface) {
+                if (generation == mTypefaceGeneration && typeface != null) {
+                    mTypefaceKey = null;
+                    invalidateSelf();
+                    applyTypeface(typeface);
+                    invalidateSelf();
+                }
+            }
+        });
+        if (typeface != null) {
+            mTypefaceKey = null;
+            invalidateSelf();
+            applyTypeface(typeface);
+            invalidateSelf();
+        }
+    }
+
+    public void setTypeface(Typeface typeface) {
+        ++mTypefaceGeneration;
+        mTypefaceKey = null;
+        invalidateSelf();
+        applyTypeface(typeface);
+        invalidateSelf();
+    }
+
+    public Typeface getTypeface() {
+        return mFillPaint.getTypeface();
+    }
+
+    /**
+     * Picks up the typeface of the pending key if it was registered after the key was set.
+     */
+    private void resolveTypeface() {
+        final Typeface typeface = TypefaceRegistry.get(mTypefaceKey);
+        if (typeface != null) {
+            mTypefaceKey = null;
+            applyTypeface(typeface);
+        }
+    }
+
+    private void applyTypeface(Typeface typeface) {
+        if (mFillPaint.getTypeface() == typeface) {
+            return;
+        }
+        mStrokePaint.setTypeface(typeface);
+        mFillPaint.setTypeface(typeface);
+        mSdfField = null;
+        mMetricsDirty = true;
+        onStyleChanged();
+        requestLayoutIfNeeded();
+    }
+
+    private void onStyleChanged() {
+        mCachedBitmap = null;
+        mAtlas = null;
+        mSdfFillFilter = null;
+        mSdfStrokeFilter = null;
+    }
+
+    /**
+     * Sets whether plain single line text is drawn from a distance field rendered once
+     * through {@link StrokeTextSdf}. Changing the text size or the stroke width then
+     * costs the same at any size, which suits animations. Colors are drawn opaque and the
+     * color filter is ignored in this mode.
+     */
+    public void setSdfEnabled(boolean enabled) {
+        if (mSdfEnabled != enabled) {
+            mSdfEnabled = enabled;
+            if (!enabled) {
+                mSdfField = null;
+            }
+            invalidateSelf();
+        }
+    }
+
+    public boolean isSdfEnabled() {
+        return mSdfEnabled;
+    }
+
+    /**
+     * Sets whether the stroked text is rendered once into a bitmap shared through
+     * {@link StrokeTextCache}, which is then drawn instead of the text. Suits static
+     * labels which are drawn often.
+     */
+    public void setCacheEnabled(boolean enabled) {
+        if (mCacheEnabled != enabled) {
+            mCacheEnabled = enabled;
+            if (!enabled) {
+                mCachedBitmap = null;
+            }
+            invalidateSelf();
+        }
+    }
+
+    public boolean isCacheEnabled() {
+        return mCacheEnabled;
     }
 
     @Override
     public void draw(Canvas canvas) {
-        drawStroke(canvas);
-        drawText(canvas);
+        if (mTypefaceKey != null) {
+            resolveTypeface();
+        }
+        if (mMetricsDirty) {
+            updateMetrics();
+        }
+
+        if (mNumberMode) {
+            drawNumber(canvas);
+            return;
+        }
+
+        if (mLayout != null || (mText != null && isLayoutText())) {
+            drawLayout(canvas);
+            return;
+        }
+
+        if (mSdfEnabled && mText != null) {
+            drawSdf(canvas);
+            return;
+        }
+
+        if (mCacheEnabled) {
+            drawCached(canvas);
+            return;
+        }
+
+        // Plain single line text, see isLayoutText().
+        final String text = (String) mText;
+        canvas.drawText(text, mX, mBaseline, mStrokePaint);
+        canvas.drawText(text, mX, mBaseline, mFillPaint);
+    }
+
+    /**
+     * Brings the typeface and the metrics up to date for {@link StrokeTextBatch}.
+     *
+     * @return whether this is plain single line text, which the batch draws with the
+     * paints of its group instead of calling {@link #draw(Canvas)}
+     */
+    boolean prepareForBatch() {
+        if (mTypefaceKey != null) {
+            resolveTypeface();
+        }
+        if (mMetricsDirty) {
+            updateMetrics();
+        }
+        return !mNumberMode && !mCacheEnabled && !mSdfEnabled && mText != null && mLayout == null
+                && !isLayoutText();
     }
 
-    private void drawStroke(Canvas canvas) {
-        initPaint();
-        mPaint.setStrokeWidth(mStrokeWidth);
-        mPaint.setColor(mStrokeColor);
-        mPaint.setStyle(Paint.Style.STROKE);
+    String getPlainText() {
+        return (String) mText;
+    }
+
+    float getX() {
+        return mX;
+    }
+
+    float getBaseline() {
+        return mBaseline;
+    }
+
+    Paint getStrokePaint() {
+        return mStrokePaint;
+    }
 
-        canvas.drawText(mText, mX, mY - mPaint.ascent() - mTextSize / 2, mPaint);
+    Paint getFillPaint() {
+        return mFillPaint;
     }
 
-    private void drawText(Canvas canvas) {
-        initPaint();
-        mPaint.setColor(mTextColor);
-        mPaint.setStyle(Paint.Style.FILL);
+    private void updateMetrics() {
+        mMetricsDirty = false;
+        final Paint.FontMetrics fm = mFontMetrics;
+        mFillPaint.getFontMetrics(fm);
+        mBaseline = mY - fm.ascent - mTextSize / 2;
+
+        if (mNumberMode) {
+            mGlyphCount = StrokeDigitAtlas.toGlyphs(mNumber, mGlyphs);
+            mTextWidth = obtainAtlas().measure(mGlyphs, mGlyphCount);
+            mTextHeight = fm.descent - fm.ascent;
+        } else if (mText == null) {
+            mTextWidth = 0;
+            mTextHeight = 0;
+        } else if (mLayout != null || isLayoutText()) {
+            // Nothing is drawn until the first layout is built.
+            mTextWidth = mLayout != null ? mLayout.getWidth() : 0;
+            mTextHeight = mLayout != null ? mLayout.getHeight() : 0;
+        } else {
+            mTextWidth = mFillPaint.measureText((String) mText);
+            mTextHeight = fm.descent - fm.ascent;
+        }
+
+        if (mTextWidth <= 0 || mTextHeight <= 0) {
+            mTextBounds.setEmpty();
+            return;
+        }
+        final float top = mY - mTextSize / 2;
+        mTextBounds.set((int) Math.floor(mX - mTextWidth / 2 - mStrokeWidth),
+                (int) Math.floor(top - mStrokeWidth),
+                (int) Math.ceil(mX + mTextWidth / 2 + mStrokeWidth),
+                (int) Math.ceil(top + mTextHeight + mStrokeWidth));
+    }
+
+    /**
+     * Draws the laid out text twice with the paint of the layout, once stroked and once
+     * filled. Draws nothing until the first layout is built.
+     */
+    private void drawLayout(Canvas canvas) {
+        final Layout layout = mLayout;
+        if (layout == null) {
+            return;
+        }
+
+        final TextPaint paint = layout.getPaint();
+        final int saveCount = canvas.save();
+        canvas.translate(mX - layout.getWidth() / 2f, mY - mTextSize / 2);
+
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(mStrokeWidth);
+        paint.setColor(mStrokePaint.getColor());
+        paint.setColorFilter(mStrokePaint.getColorFilter());
+        layout.draw(canvas);
+
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(mFillPaint.getColor());
+        layout.draw(canvas);
 
-        canvas.drawText(mText, mX, mY - mPaint.ascent() - mTextSize / 2, mPaint);
+        canvas.restoreToCount(saveCount);
     }
 
-    private void initPaint() {
-        mPaint.reset();
-        mPaint.setAntiAlias(true);
-        mPaint.setTextAlign(Paint.Align.CENTER);
-        mPaint.setTextSize(mTextSize);
-        mPaint.setTypeface(Typeface.SERIF);
+    private void drawNumber(Canvas canvas) {
+        // The glyphs and their width are updated with the metrics.
+        obtainAtlas().draw(canvas, mGlyphs, mGlyphCount, mX - mTextWidth / 2,
+                mY - mTextSize / 2, mBitmapPaint);
+    }
+
+    private StrokeDigitAtlas obtainAtlas() {
+        if (mAtlas == null) {
+            mAtlas = StrokeDigitAtlas.obtain(newCacheKey(StrokeDigitAtlas.GLYPHS),
+                    mStrokePaint, mFillPaint);
+        }
+        return mAtlas;
+    }
+
+    /**
+     * Draws the field scaled to the text size, thresholded once for the stroke and once
+     * for the fill.
+     */
+    private void drawSdf(Canvas canvas) {
+        if (mSdfField == null) {
+            mSdfField = StrokeTextSdf.obtain((String) mText, mFillPaint.getTypeface());
+        }
+
+        final float scale = (float) mTextSize / StrokeTextSdf.TEXT_SIZE;
+        if (mSdfFillFilter == null || mSdfScale != scale) {
+            mSdfScale = scale;
+            mSdfStrokeFilter = StrokeTextSdf.newFilter(scale, mStrokeWidth / 2f,
+                    mStrokeColor);
+            mSdfFillFilter = StrokeTextSdf.newFilter(scale, 0, mTextColor);
+        }
+
+        // The filters compute the alpha, so the alpha of this drawable needs a layer.
+        final int saveCount = mAlpha < 255
+                ? canvas.saveLayerAlpha(mTextBounds.left, mTextBounds.top, mTextBounds.right,
+                mTextBounds.bottom, mAlpha, Canvas.ALL_SAVE_FLAG)
+                : canvas.save();
+        canvas.translate(mX - mSdfField.getWidth() * scale / 2,
+                mY - mTextSize / 2 - StrokeTextSdf.SPREAD * scale);
+        canvas.scale(scale, scale);
+
+        if (mStrokeWidth > 0) {
+            mSdfPaint.setColorFilter(mSdfStrokeFilter);
+            canvas.drawBitmap(mSdfField, 0, 0, mSdfPaint);
+        }
+        mSdfPaint.setColorFilter(mSdfFillFilter);
+        canvas.drawBitmap(mSdfField, 0, 0, mSdfPaint);
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    private StrokeTextCache.Key newCacheKey(String text) {
+        return new StrokeTextCache.Key(text, mTextSize, mStrokeWidth, mStrokeColor, mTextColor,
+                mFillPaint.getTypeface());
+    }
+
+    private void drawCached(Canvas canvas) {
+        if (mCachedBitmap == null) {
+            mCachedBitmap = obtainCachedBitmap();
+        }
+
+        // The baseline of the text in the bitmap is mStrokeWidth - ascent.
+        canvas.drawBitmap(mCachedBitmap, mX - mCachedBitmap.getWidth() / 2f,
+                mY - mTextSize / 2 - mStrokeWidth, mBitmapPaint);
+    }
+
+    private Bitmap obtainCachedBitmap() {
+        final String text = (String) mText;
+        final StrokeTextCache.Key key = newCacheKey(text);
+        Bitmap bitmap = StrokeTextCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        // Alpha and color filter are applied when the bitmap is drawn.
+        final Paint strokePaint = new Paint(mStrokePaint);
+        final Paint fillPaint = new Paint(mFillPaint);
+        strokePaint.setColor(mStrokeColor);
+        strokePaint.setColorFilter(null);
+        fillPaint.setColor(mTextColor);
+        fillPaint.setColorFilter(null);
+
+        final Paint.FontMetrics fm = fillPaint.getFontMetrics();
+        final int width = (int) Math.ceil(fillPaint.measureText(text)) + mStrokeWidth * 2;
+        final int height = (int) Math.ceil(fm.descent - fm.ascent) + mStrokeWidth * 2;
+        bitmap = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1),
+                Bitmap.Config.ARGB_8888);
+
+        final Canvas canvas = new Canvas(bitmap);
+        final float x = bitmap.getWidth() / 2f;
+        final float y = mStrokeWidth - fm.ascent;
+        canvas.drawText(text, x, y, strokePaint);
+        canvas.drawText(text, x, y, fillPaint);
+
+        StrokeTextCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    private void initPaint(Paint paint) {
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setTextSize(mTextSize);
+        paint.setTypeface(Typeface.SERIF);
+    }
+
+    /**
+     * Applies the colors modulated by the alpha of this drawable.
+     */
+    private void applyColors() {
+        applyColor(mStrokePaint, mStrokeColor);
+        applyColor(mFillPaint, mTextColor);
+        mBitmapPaint.setAlpha(mAlpha);
+    }
+
+    private void applyColor(Paint paint, int color) {
+        paint.setColor(color);
+        paint.setAlpha(Color.alpha(color) * mAlpha / 255);
     }
 
     @Override
     public void setAlpha(int alpha) {
-        mPaint.setAlpha(alpha);
+        if (mAlpha != alpha) {
+            mAlpha = alpha;
+            applyColors();
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
     }
 
     @Override
     public void setColorFilter(ColorFilter colorFilter) {
-        mPaint.setColorFilter(colorFilter);
+        mStrokePaint.setColorFilter(colorFilter);
+        mFillPaint.setColorFilter(colorFilter);
+        mBitmapPaint.setColorFilter(colorFilter);
+        invalidateSelf();
     }
 
     @Override
     public int getOpacity() {
-        return 1 - mPaint.getAlpha();
+        if (mAlpha == 0 || isEmpty()) {
+            return PixelFormat.TRANSPARENT;
+        }
+        // Antialiased glyphs never cover their whole box.
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    private boolean isEmpty() {
+        return !mNumberMode && (mText == null || mText.length() == 0);
+    }
+
+    /**
+     * Returns the width of the text including the stroke.
+     */
+    @Override
+    public int getIntrinsicWidth() {
+        if (mMetricsDirty) {
+            updateMetrics();
+        }
+        return mTextBounds.width();
+    }
+
+    /**
+     * Returns the height of the text including the stroke.
+     */
+    @Override
+    public int getIntrinsicHeight() {
+        if (mMetricsDirty) {
+            updateMetrics();
+        }
+        return mTextBounds.height();
+    }
+
+    /**
+     * Returns the box of the glyphs, so that {@link #invalidateSelf()} repaints only the
+     * text rather than the whole bounds.
+     */
+    @Override
+    public Rect getDirtyBounds() {
+        if (mMetricsDirty) {
+            updateMetrics();
+        }
+        return mTextBounds;
     }
 }
@@ -0,0 +1,159 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 文字的距离场（Distance Field）：在CPU上以固定字号渲染一次，保存为ALPHA_8的Bitmap，
+ * 每个像素记录到文字边缘的距离。绘制时按阈值取出描边或填充，任意字号和描边宽度都只需
+ * 缩放绘制这张Bitmap。
+ */
+final class StrokeTextSdf {
+
+    /** The text size the fields are rendered at. */
+    static final int TEXT_SIZE = 48;
+
+    /** The distance in field pixels encoded on each side of the edge. */
+    static final int SPREAD = 8;
+
+    /** The alpha of the edge in the field. */
+    private static final float EDGE = 0.5f;
+
+    private static final float SQRT2 = 1.4142135f;
+
+    private StrokeTextSdf() {
+    }
+
+    /**
+     * Returns the shared field of the text, rendering it if needed. The top of the text is
+     * at {@link #SPREAD} in the field and the text is centered horizontally.
+     */
+    static Bitmap obtain(String text, Typeface typeface) {
+        // Fields don't depend on the colors and the stroke; a negative stroke width keeps
+        // them apart from the bitmaps of the cached mode.
+        final StrokeTextCache.Key key = new StrokeTextCache.Key(text, TEXT_SIZE, -1, 0, 0,
+                typeface);
+        Bitmap field = StrokeTextCache.get(key);
+        if (field == null) {
+            field = render(text, typeface);
+            StrokeTextCache.put(key, field);
+        }
+        return field;
+    }
+
+    private static Bitmap render(String text, Typeface typeface) {
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextAlign(Paint.Align.CENTER);
+        paint.setTextSize(TEXT_SIZE);
+        paint.setTypeface(typeface);
+
+        final Paint.FontMetrics fm = paint.getFontMetrics();
+        final int width = Math.max((int) Math.ceil(paint.measureText(text)), 1) + SPREAD * 2;
+        final int height = Math.max((int) Math.ceil(fm.descent - fm.ascent), 1) + SPREAD * 2;
+
+        final Bitmap glyphs = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(glyphs).drawText(text, width / 2f, SPREAD - fm.ascent, paint);
+        final int[] pixels = new int[width * height];
+        glyphs.getPixels(pixels, 0, width, 0, 0, width, height);
+        glyphs.recycle();
+
+        final boolean[] inside = new boolean[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            inside[i] = Color.alpha(pixels[i]) >= 128;
+        }
+        final float[] outside = distanceTo(inside, true, width, height);
+        final float[] within = distanceTo(inside, false, width, height);
+
+        final Bitmap field = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        final int rowBytes = field.getRowBytes();
+        final byte[] bytes = new byte[rowBytes * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int i = y * width + x;
+                // Positive inside the glyphs, the edge half way between two pixels.
+                final float distance = inside[i] ? within[i] - 0.5f : 0.5f - outside[i];
+                final float value = EDGE + distance / (2 * SPREAD);
+                bytes[y * rowBytes + x] = (byte) Math.round(
+                        Math.max(0f, Math.min(1f, value)) * 255);
+            }
+        }
+        field.copyPixelsFromBuffer(ByteBuffer.wrap(bytes));
+        return field;
+    }
+
+    /**
+     * Returns the chamfer distance of each pixel to the nearest pixel whose inside flag is
+     * {@code target}, 0 for those pixels themselves.
+     */
+    private static float[] distanceTo(boolean[] inside, boolean target, int width,
+                                      int height) {
+        final float far = width + height;
+        final float[] d = new float[inside.length];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = inside[i] == target ? 0 : far;
+        }
+
+        // Forward pass from the top left.
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int i = y * width + x;
+                float v = d[i];
+                if (x > 0) v = Math.min(v, d[i - 1] + 1);
+                if (y > 0) {
+                    v = Math.min(v, d[i - width] + 1);
+                    if (x > 0) v = Math.min(v, d[i - width - 1] + SQRT2);
+                    if (x < width - 1) v = Math.min(v, d[i - width + 1] + SQRT2);
+                }
+                d[i] = v;
+            }
+        }
+
+        // Backward pass from the bottom right.
+        for (int y = height - 1; y >= 0; y--) {
+            for (int x = width - 1; x >= 0; x--) {
+                final int i = y * width + x;
+                float v = d[i];
+                if (x < width - 1) v = Math.min(v, d[i + 1] + 1);
+                if (y < height - 1) {
+                    v = Math.min(v, d[i + width] + 1);
+                    if (x < width - 1) v = Math.min(v, d[i + width + 1] + SQRT2);
+                    if (x > 0) v = Math.min(v, d[i + width - 1] + SQRT2);
+                }
+                d[i] = v;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Returns a filter which turns the field into an antialiased shape of the given color.
+     *
+     * @param scale  the size of a field pixel on screen
+     * @param outset how far outside the edge of the glyphs the shape reaches, in screen
+     *               pixels; 0 for the fill, half the stroke width for the stroke. Outsets
+     *               reaching the end of the field are reduced to fit in it.
+     * @param color  the color of the shape, whose alpha is ignored
+     */
+    static ColorMatrixColorFilter newFilter(float scale, float outset, int color) {
+        // The alpha goes from 0 to 1 over about one screen pixel around the threshold.
+        final float slope = Math.max(2 * SPREAD * scale, 1f);
+        // Past SPREAD the field is 0 everywhere, which must stay transparent or the whole
+        // field would show as a box.
+        final float minThreshold = 0.5f / slope + 1f / 255;
+        final float threshold = Math.max(EDGE - outset / scale / (2 * SPREAD), minThreshold);
+        final ColorMatrix matrix = new ColorMatrix(new float[]{
+                0, 0, 0, 0, Color.red(color),
+                0, 0, 0, 0, Color.green(color),
+                0, 0, 0, 0, Color.blue(color),
+                0, 0, 0, slope, 255 * (0.5f - slope * threshold),
+        });
+        return new ColorMatrixColorFilter(matrix);
+    }
+}
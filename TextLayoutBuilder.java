@@ -0,0 +1,71 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+/**
+ * 在后台线程完成文字的排版（9.0以上使用PrecomputedText），结果回调到主线程
+ */
+final class TextLayoutBuilder {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Callback invoked on the main thread when a layout is built.
+     */
+    interface Callback {
+        void onLayoutBuilt(Layout layout);
+    }
+
+    private TextLayoutBuilder() {
+    }
+
+    /**
+     * Builds a center aligned layout of the text on a background thread.
+     *
+     * @param paint    the paint to shape with, owned by the layout from now on
+     * @param maxWidth the width to wrap the text at, or 0 to not wrap
+     */
+    static void build(final CharSequence text, final TextPaint paint, final int maxWidth,
+                      final Callback callback) {
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Layout layout = build(text, paint, maxWidth);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLayoutBuilt(layout);
+                    }
+                });
+            }
+        });
+    }
+
+    static Layout build(CharSequence text, TextPaint paint, int maxWidth) {
+        final int width = maxWidth > 0 ? maxWidth
+                : (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            final PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint)
+                    .build();
+            final PrecomputedText precomputed = PrecomputedText.create(text, params);
+            return StaticLayout.Builder.obtain(precomputed, 0, precomputed.length(), paint, width)
+                    .setAlignment(Layout.Alignment.ALIGN_CENTER)
+                    .setIncludePad(false)
+                    .build();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                    .setAlignment(Layout.Alignment.ALIGN_CENTER)
+                    .setIncludePad(false)
+                    .build();
+        }
+        return new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_CENTER, 1f, 0f,
+                false);
+    }
+}
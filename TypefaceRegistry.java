@@ -0,0 +1,145 @@
+package cn.dream.android.appstore.ui.view;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内共享的字体表：启动时在后台线程预加载assets中的字体，之后按key取用同一个Typeface，
+ * 避免每个Drawable都在主线程createFromAsset。
+ * <p>
+ * 通过{@link #getLoadTime(String)}可以查看每个字体的加载耗时。
+ */
+public final class TypefaceRegistry {
+
+    private static final String TAG = TypefaceRegistry.class.getSimpleName();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final Map<String, Typeface> sTypefaces = new HashMap<String, Typeface>();
+    private static final Map<String, Long> sLoadTimes = new HashMap<String, Long>();
+    /** The callbacks waiting for each font being loaded. */
+    private static final Map<String, List<Callback>> sPending =
+            new HashMap<String, List<Callback>>();
+
+    /**
+     * Callback invoked on the main thread when a font is loaded.
+     */
+    interface Callback {
+        /**
+         * @param typeface the loaded font, or null if it failed to load
+         */
+        void onTypefaceLoaded(Typeface typeface);
+    }
+
+    private TypefaceRegistry() {
+    }
+
+    /**
+     * Loads the font at the given asset path on a background thread and registers it
+     * under {@code key}. Does nothing if the key is registered or being loaded.
+     */
+    public static void preload(Context context, final String key, final String assetPath) {
+        final AssetManager assets = context.getApplicationContext().getAssets();
+        synchronized (TypefaceRegistry.class) {
+            if (sTypefaces.containsKey(key) || sPending.containsKey(key)) {
+                return;
+            }
+            sPending.put(key, new ArrayList<Callback>());
+        }
+
+        BackgroundExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                Typeface typeface = null;
+                try {
+                    typeface = Typeface.createFromAsset(assets, assetPath);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Unable to load " + assetPath, e);
+                }
+                onLoaded(key, typeface, (System.nanoTime() - start) / 1000000);
+            }
+        });
+    }
+
+    /**
+     * Registers a font created elsewhere under {@code key}.
+     */
+    public static void register(String key, Typeface typeface) {
+        onLoaded(key, typeface, 0);
+    }
+
+    private static void onLoaded(String key, final Typeface typeface, long loadTime) {
+        final List<Callback> callbacks;
+        synchronized (TypefaceRegistry.class) {
+            callbacks = sPending.remove(key);
+            if (typeface != null) {
+                sTypefaces.put(key, typeface);
+                sLoadTimes.put(key, loadTime);
+            }
+        }
+
+        if (callbacks == null || callbacks.isEmpty()) {
+            return;
+        }
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback callback : callbacks) {
+                    callback.onTypefaceLoaded(typeface);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the font registered under {@code key}, or null if it is not loaded yet.
+     */
+    public static synchronized Typeface get(String key) {
+        return sTypefaces.get(key);
+    }
+
+    /**
+     * Returns the font registered under {@code key} if it is loaded, otherwise calls back
+     * when it is. Returns null without calling back if the key is unknown.
+     */
+    static synchronized Typeface get(String key, Callback callback) {
+        final Typeface typeface = sTypefaces.get(key);
+        if (typeface == null) {
+            final List<Callback> callbacks = sPending.get(key);
+            if (callbacks != null) {
+                callbacks.add(callback);
+            }
+        }
+        return typeface;
+    }
+
+    /**
+     * Returns how long the font registered under {@code key} took to load in
+     * milliseconds, or -1 if it is not loaded.
+     */
+    public static synchronized long getLoadTime(String key) {
+        final Long time = sLoadTimes.get(key);
+        return time != null ? time : -1;
+    }
+
+    /**
+     * Returns how long all the loaded fonts took to load in milliseconds.
+     */
+    public static synchronized long getTotalLoadTime() {
+        long total = 0;
+        for (Long time : sLoadTimes.values()) {
+            total += time;
+        }
+        return total;
+    }
+}